@@ -16,7 +16,16 @@ public class Bishop extends Piece
      */
     public Bishop(Color col, String fileName)
     {
-        super(col, fileName, 5);
+        super(col, fileName, VALUES[BISHOP]);
+    }
+
+    /**
+     * Returns the type code of this piece
+     * @return Piece.BISHOP
+     */
+    public int getType()
+    {
+        return BISHOP;
     }
 
     /**
@@ -25,10 +34,6 @@ public class Bishop extends Piece
      */
     public ArrayList<Location> destinations()
     {
-        ArrayList<Location> validDests = new ArrayList<Location>();
-        int[] directions = {Location.NORTHEAST, Location.NORTHWEST, Location.SOUTHEAST, Location.SOUTHWEST};
-        for(int d : directions)
-            sweep(validDests, d);
-        return validDests;
+        return sweep(Board.bishopAttacks(getSquare(), getOccupied()));
     }
 }
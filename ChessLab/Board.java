@@ -3,11 +3,184 @@ import java.util.*;
 
 /**
  * Represesents a rectangular game board, containing Piece objects.
+ * Alongside the grid of pieces, the board keeps one 64-bit bitboard per piece type and color
+ * (plus occupancy bitboards), which are used to generate moves without walking the grid.
+ * Squares are numbered row * 8 + col, so square 0 is the top left corner (black's back rank).
  * @author Harrison Chen
  * @version 3/27/23
  */
 public class Board extends BoundedGrid<Piece>
 {
+    //side indices used to address the bitboards
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    //a shared location object for each square, so move generation does not allocate them
+    private static final Location[] LOCATIONS = new Location[64];
+
+    //squares attacked by a knight, king, or pawn (per side) standing on each square
+    private static final long[] KNIGHT_ATTACKS = new long[64];
+    private static final long[] KING_ATTACKS = new long[64];
+    private static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    //rays leaving each square in each direction, not including the square itself
+    //directions 0-3 increase the square number (E, S, SE, SW), 4-7 decrease it (W, N, NW, NE)
+    private static final long[][] RAYS = new long[8][64];
+    private static final int[] RAY_ROWS = {0, 1, 1, 1, 0, -1, -1, -1};
+    private static final int[] RAY_COLS = {1, 0, 1, -1, -1, 0, -1, 1};
+
+    //random keys for each piece type and color on each square, and for black being to move,
+    //combined with xor into the zobrist key of a position
+    private static final long[][][] ZOBRIST = new long[2][6][64];
+    private static final long BLACK_TO_MOVE;
+
+    //bonus in hundredths of a pawn for each piece type standing on each square, as seen by white
+    //(row 0 is black's back rank); black uses the same tables mirrored top to bottom
+    private static final int[][] PIECE_SQUARE =
+    {
+        { //pawn
+              0,  0,  0,  0,  0,  0,  0,  0,
+             50, 50, 50, 50, 50, 50, 50, 50,
+             10, 10, 20, 30, 30, 20, 10, 10,
+              5,  5, 10, 25, 25, 10,  5,  5,
+              0,  0,  0, 20, 20,  0,  0,  0,
+              5, -5,-10,  0,  0,-10, -5,  5,
+              5, 10, 10,-20,-20, 10, 10,  5,
+              0,  0,  0,  0,  0,  0,  0,  0
+        },
+        { //knight
+            -50,-40,-30,-30,-30,-30,-40,-50,
+            -40,-20,  0,  0,  0,  0,-20,-40,
+            -30,  0, 10, 15, 15, 10,  0,-30,
+            -30,  5, 15, 20, 20, 15,  5,-30,
+            -30,  0, 15, 20, 20, 15,  0,-30,
+            -30,  5, 10, 15, 15, 10,  5,-30,
+            -40,-20,  0,  5,  5,  0,-20,-40,
+            -50,-40,-30,-30,-30,-30,-40,-50
+        },
+        { //bishop
+            -20,-10,-10,-10,-10,-10,-10,-20,
+            -10,  0,  0,  0,  0,  0,  0,-10,
+            -10,  0,  5, 10, 10,  5,  0,-10,
+            -10,  5,  5, 10, 10,  5,  5,-10,
+            -10,  0, 10, 10, 10, 10,  0,-10,
+            -10, 10, 10, 10, 10, 10, 10,-10,
+            -10,  5,  0,  0,  0,  0,  5,-10,
+            -20,-10,-10,-10,-10,-10,-10,-20
+        },
+        { //rook
+              0,  0,  0,  0,  0,  0,  0,  0,
+              5, 10, 10, 10, 10, 10, 10,  5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+              0,  0,  0,  5,  5,  0,  0,  0
+        },
+        { //queen
+            -20,-10,-10, -5, -5,-10,-10,-20,
+            -10,  0,  0,  0,  0,  0,  0,-10,
+            -10,  0,  5,  5,  5,  5,  0,-10,
+             -5,  0,  5,  5,  5,  5,  0, -5,
+              0,  0,  5,  5,  5,  5,  0, -5,
+            -10,  5,  5,  5,  5,  5,  0,-10,
+            -10,  0,  5,  0,  0,  0,  0,-10,
+            -20,-10,-10, -5, -5,-10,-10,-20
+        },
+        { //king
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -20,-30,-30,-40,-40,-30,-30,-20,
+            -10,-20,-20,-20,-20,-20,-20,-10,
+             20, 20,  0,  0,  0,  0, 20, 20,
+             20, 30, 10,  0,  0, 10, 30, 20
+        }
+    };
+
+    //squares strictly between two squares on a shared rank, file, or diagonal (0 otherwise)
+    private static final long[][] BETWEEN = new long[64][64];
+
+    static
+    {
+        int[] knightRows = {2, 2, -1, 1, -2, -2, -1, 1};
+        int[] knightCols = {-1, 1, 2, 2, -1, 1, -2, -2};
+        int[] kingRows = {1, 1, 1, 0, 0, -1, -1, -1};
+        int[] kingCols = {-1, 0, 1, 1, -1, -1, 0, 1};
+        for (int sq = 0; sq < 64; sq++)
+        {
+            int row = sq / 8;
+            int col = sq % 8;
+            LOCATIONS[sq] = new Location(row, col);
+            for (int i = 0; i < 8; i++)
+            {
+                KNIGHT_ATTACKS[sq] |= bit(row + knightRows[i], col + knightCols[i]);
+                KING_ATTACKS[sq] |= bit(row + kingRows[i], col + kingCols[i]);
+            }
+            PAWN_ATTACKS[WHITE][sq] = bit(row - 1, col - 1) | bit(row - 1, col + 1);
+            PAWN_ATTACKS[BLACK][sq] = bit(row + 1, col - 1) | bit(row + 1, col + 1);
+            for (int d = 0; d < 8; d++)
+                for (int r = row + RAY_ROWS[d], c = col + RAY_COLS[d]; bit(r, c) != 0;
+                        r += RAY_ROWS[d], c += RAY_COLS[d])
+                    RAYS[d][sq] |= bit(r, c);
+        }
+        for (int sq = 0; sq < 64; sq++)
+            for (int d = 0; d < 8; d++)
+            {
+                long ray = RAYS[d][sq];
+                while (ray != 0)
+                {
+                    int t = Long.numberOfTrailingZeros(ray);
+                    ray &= ray - 1;
+                    BETWEEN[sq][t] = RAYS[d][sq] & ~RAYS[d][t] & ~(1L << t);
+                }
+            }
+        Random random = new Random(20230327L);
+        for (int side = 0; side < 2; side++)
+            for (int type = 0; type < 6; type++)
+                for (int sq = 0; sq < 64; sq++)
+                    ZOBRIST[side][type][sq] = random.nextLong();
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    //bitboards of each piece type, indexed by [side][type]
+    private long[][] pieces = new long[2][6];
+
+    //bitboards of all the pieces of each side
+    private long[] occupancy = new long[2];
+
+    //the piece on each square, indexed by square number
+    private Piece[] squares = new Piece[64];
+
+    //the side and type of the piece on each square as side * 8 + type + 1, 0 if empty
+    //(unlike squares, this is also kept up to date by makeMove and unmakeMove)
+    private byte[] mailbox = new byte[64];
+
+    //the FEN letter of each piece, white pieces by type code and then black pieces
+    private static final String FEN_PIECES = "PNBRQKpnbrqk";
+
+    //the image file of each piece, by side and type code
+    private static final String[][] IMAGE_FILES =
+    {
+        {"white_pawn.gif", "white_knight.gif", "white_bishop.gif",
+         "white_rook.gif", "white_queen.gif", "white_king.gif"},
+        {"black_pawn.gif", "black_knight.gif", "black_bishop.gif",
+         "black_rook.gif", "black_queen.gif", "black_king.gif"}
+    };
+
+    //zobrist key of the pieces on the board, updated as pieces are put and removed
+    private long key;
+
+    //running evaluation of each side, updated as pieces are put, removed, and moved:
+    //the total value of its pieces, and the piece-square bonus of where they stand
+    private int[] material = new int[2];
+    private int[] placement = new int[2];
+
+    //reused by see: the material each capture of an exchange wins, counting from the first
+    private int[] swapList = new int[32];
+
 	/**
      * Constructs a new Board with the given dimensions (8 by 8)
      */
@@ -16,6 +189,564 @@ public class Board extends BoundedGrid<Piece>
 		super(8, 8);
 	}
 
+    /**
+     * Constructs a copy of a board, holding new pieces of the same types and colors on the same
+     * squares, so the copy can be searched independently of the original
+     * @param other the board to copy, which must not have packed moves made on it
+     */
+    public Board(Board other)
+    {
+        this();
+        for (int sq = 0; sq < 64; sq++)
+        {
+            Piece p = other.squares[sq];
+            if (p != null)
+                Piece.create(p.getType(), p.getColor(), p.getImageFileName())
+                     .putSelfInGrid(this, LOCATIONS[sq]);
+        }
+    }
+
+    /**
+     * Replaces the pieces on this board with the position of a FEN string. Only the piece
+     * placement and the side to move are read; this board has no castling, en passant, or move
+     * clocks, so the other fields are ignored.
+     * @param fen the FEN string, such as rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1
+     * @return the side to move, WHITE if the field is missing
+     * @throws IllegalArgumentException if the piece placement is not 8 rows of 8 squares
+     */
+    public int setFen(String fen)
+    {
+        for (int side = WHITE; side <= BLACK; side++)
+            while (occupancy[side] != 0)
+                squares[Long.numberOfTrailingZeros(occupancy[side])].removeSelfFromGrid();
+
+        int row = 0;
+        int col = 0;
+        int i = 0;
+        for (; i < fen.length() && fen.charAt(i) != ' '; i++)
+        {
+            char ch = fen.charAt(i);
+            if (ch == '/')
+            {
+                if (col != 8)
+                    throw new IllegalArgumentException("Row " + (row + 1) + " is not 8 squares in "
+                                                       + fen);
+                row++;
+                col = 0;
+            }
+            else if (ch >= '1' && ch <= '8')
+                col += ch - '0';
+            else
+            {
+                int p = FEN_PIECES.indexOf(ch);
+                if (p < 0)
+                    throw new IllegalArgumentException("Bad piece " + ch + " in " + fen);
+                if (row > 7 || col > 7)
+                    throw new IllegalArgumentException("Too many squares in " + fen);
+                int side = p / 6;
+                Color color = side == WHITE ? Color.WHITE : Color.BLACK;
+                Piece.create(p % 6, color, IMAGE_FILES[side][p % 6])
+                     .putSelfInGrid(this, LOCATIONS[row * 8 + col]);
+                col++;
+            }
+        }
+        if (row != 7 || col != 8)
+            throw new IllegalArgumentException("The placement is not 8 rows of 8 squares in " + fen);
+        return i + 1 < fen.length() && fen.charAt(i + 1) == 'b' ? BLACK : WHITE;
+    }
+
+    /**
+     * Returns the FEN string of this board. The castling and en passant fields are always -,
+     * since this board has neither, and the move clocks are 0 1.
+     * @param sideToMove WHITE or BLACK
+     * @return the FEN string
+     */
+    public String toFen(int sideToMove)
+    {
+        StringBuilder fen = new StringBuilder(90);
+        for (int row = 0; row < 8; row++)
+        {
+            if (row > 0)
+                fen.append('/');
+            int empty = 0;
+            for (int col = 0; col < 8; col++)
+            {
+                int m = mailbox[row * 8 + col];
+                if (m == 0)
+                    empty++;
+                else
+                {
+                    if (empty > 0)
+                        fen.append((char) ('0' + empty));
+                    empty = 0;
+                    fen.append(FEN_PIECES.charAt((m - 1) / 8 * 6 + (m - 1) % 8));
+                }
+            }
+            if (empty > 0)
+                fen.append((char) ('0' + empty));
+        }
+        fen.append(sideToMove == WHITE ? " w - - 0 1" : " b - - 0 1");
+        return fen.toString();
+    }
+
+    /**
+     * Returns the bitboard with only the given square set, or 0 if the square is off the board
+     * @param row the row of the square
+     * @param col the column of the square
+     * @return the bitboard of the square
+     */
+    private static long bit(int row, int col)
+    {
+        if (row < 0 || row >= 8 || col < 0 || col >= 8)
+            return 0;
+        return 1L << (row * 8 + col);
+    }
+
+    /**
+     * Returns the side index (WHITE or BLACK) of a color
+     * @param color the color of a player or piece
+     * @return WHITE if the color is white, BLACK otherwise
+     */
+    public static int side(Color color)
+    {
+        return color.equals(Color.WHITE) ? WHITE : BLACK;
+    }
+
+    /**
+     * Returns the square number of a location
+     * @param loc a valid location
+     * @return row * 8 + col
+     */
+    public static int square(Location loc)
+    {
+        return loc.getRow() * 8 + loc.getCol();
+    }
+
+    /**
+     * Returns the algebraic name of a square, such as e4
+     * @param sq the square number
+     * @return the file letter followed by the rank number (row 7 is rank 1)
+     */
+    public static String squareName(int sq)
+    {
+        return "" + (char) ('a' + sq % 8) + (8 - sq / 8);
+    }
+
+    /**
+     * Returns the shared location object for a square number
+     * @param sq the square number
+     * @return the location of the square
+     */
+    public static Location location(int sq)
+    {
+        return LOCATIONS[sq];
+    }
+
+    /**
+     * Returns the bitboard of one type of piece for one side
+     * @param side WHITE or BLACK
+     * @param type the piece type code
+     * @return the bitboard
+     */
+    public long getPieces(int side, int type)
+    {
+        return pieces[side][type];
+    }
+
+    /**
+     * Returns the bitboard of all the pieces of one side
+     * @param side WHITE or BLACK
+     * @return the bitboard
+     */
+    public long getOccupancy(int side)
+    {
+        return occupancy[side];
+    }
+
+    /**
+     * Returns the zobrist key of this position, which identifies it (with high probability)
+     * regardless of the moves that led to it
+     * @param sideToMove the side to move, WHITE or BLACK
+     * @return the 64-bit key
+     */
+    public long getKey(int sideToMove)
+    {
+        return sideToMove == BLACK ? key ^ BLACK_TO_MOVE : key;
+    }
+
+    /**
+     * Returns the piece on a square without any bounds checks. Packed moves made with makeMove
+     * are not reflected until they are unmade.
+     * @param sq the square number
+     * @return the piece on the square, or null if it is empty
+     */
+    public Piece pieceAt(int sq)
+    {
+        return squares[sq];
+    }
+
+    /**
+     * Returns the type of the piece on a square
+     * @param sq the square number
+     * @return the piece type code, or -1 if the square is empty
+     */
+    public int typeAt(int sq)
+    {
+        return (mailbox[sq] & 7) - 1;
+    }
+
+    /**
+     * Returns the total value of the pieces of one side
+     * @param side WHITE or BLACK
+     * @return the sum of the values of the side's pieces
+     */
+    public int material(int side)
+    {
+        return material[side];
+    }
+
+    /**
+     * Returns the piece-square bonus of a piece
+     * @param side the side of the piece
+     * @param type the type of the piece
+     * @param sq the square the piece stands on
+     * @return the bonus in hundredths of a pawn
+     */
+    private static int pieceSquare(int side, int type, int sq)
+    {
+        return PIECE_SQUARE[type][side == WHITE ? sq : sq ^ 56];
+    }
+
+    /**
+     * Returns the evaluation of this position from the perspective of one side: the difference
+     * in material plus the difference in piece-square bonuses, kept up to date as pieces move
+     * @param side WHITE or BLACK
+     * @return the evaluation in hundredths of a pawn
+     */
+    public int evaluate(int side)
+    {
+        return 100 * (material[side] - material[1 - side]) + placement[side] - placement[1 - side];
+    }
+
+    /**
+     * Puts a piece into the grid and records it in the bitboards
+     * @param loc the location to put the piece at
+     * @param obj the piece
+     * @return the piece previously at the location, or null
+     */
+    public Piece put(Location loc, Piece obj)
+    {
+        Piece old = super.put(loc, obj);
+        int sq = square(loc);
+        if (old != null)
+            clearSquare(sq, old);
+        long b = 1L << sq;
+        int side = side(obj.getColor());
+        pieces[side][obj.getType()] |= b;
+        occupancy[side] |= b;
+        squares[sq] = obj;
+        mailbox[sq] = (byte) (side * 8 + obj.getType() + 1);
+        key ^= ZOBRIST[side][obj.getType()][sq];
+        material[side] += obj.getValue();
+        placement[side] += pieceSquare(side, obj.getType(), sq);
+        return old;
+    }
+
+    /**
+     * Removes a piece from the grid and from the bitboards
+     * @param loc the location to clear
+     * @return the piece removed, or null if the location was empty
+     */
+    public Piece remove(Location loc)
+    {
+        Piece old = super.remove(loc);
+        if (old != null)
+            clearSquare(square(loc), old);
+        return old;
+    }
+
+    //clears the bits of a piece leaving a square
+    private void clearSquare(int sq, Piece piece)
+    {
+        long b = ~(1L << sq);
+        int side = side(piece.getColor());
+        pieces[side][piece.getType()] &= b;
+        occupancy[side] &= b;
+        squares[sq] = null;
+        mailbox[sq] = 0;
+        key ^= ZOBRIST[side][piece.getType()][sq];
+        material[side] -= piece.getValue();
+        placement[side] -= pieceSquare(side, piece.getType(), sq);
+    }
+
+    /**
+     * Returns the squares a rook on a square attacks
+     * @param sq the square
+     * @param occupied the bitboard of all occupied squares
+     * @return the attacked squares
+     */
+    public static long rookAttacks(int sq, long occupied)
+    {
+        return Magic.rookAttacks(sq, occupied);
+    }
+
+    /**
+     * Returns the squares a bishop on a square attacks
+     * @param sq the square
+     * @param occupied the bitboard of all occupied squares
+     * @return the attacked squares
+     */
+    public static long bishopAttacks(int sq, long occupied)
+    {
+        return Magic.bishopAttacks(sq, occupied);
+    }
+
+    /**
+     * Returns the squares a piece on a square attacks
+     * @param side the side of the piece, which decides the direction of a pawn
+     * @param type the piece type code
+     * @param sq the square
+     * @param occupied the bitboard of all occupied squares
+     * @return the attacked squares
+     */
+    public static long attacks(int side, int type, int sq, long occupied)
+    {
+        switch (type)
+        {
+            case Piece.PAWN:
+                return PAWN_ATTACKS[side][sq];
+            case Piece.KNIGHT:
+                return KNIGHT_ATTACKS[sq];
+            case Piece.BISHOP:
+                return bishopAttacks(sq, occupied);
+            case Piece.ROOK:
+                return rookAttacks(sq, occupied);
+            case Piece.QUEEN:
+                return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+            default:
+                return KING_ATTACKS[sq];
+        }
+    }
+
+    /**
+     * Returns whether a square is attacked by any piece of one side
+     * @param sq the square
+     * @param by the attacking side
+     * @return true if a piece of side by could capture on the square
+     */
+    public boolean isAttacked(int sq, int by)
+    {
+        return attackersTo(sq, by, occupancy[WHITE] | occupancy[BLACK]) != 0;
+    }
+
+    /**
+     * Returns the pieces of one side that attack a square
+     * @param sq the square
+     * @param by the attacking side
+     * @param occupied the occupancy used to block sliding pieces
+     * @return the bitboard of attackers
+     */
+    private long attackersTo(int sq, int by, long occupied)
+    {
+        long[] p = pieces[by];
+        return (KNIGHT_ATTACKS[sq] & p[Piece.KNIGHT])
+             | (KING_ATTACKS[sq] & p[Piece.KING])
+             | (PAWN_ATTACKS[1 - by][sq] & p[Piece.PAWN])
+             | (rookAttacks(sq, occupied) & (p[Piece.ROOK] | p[Piece.QUEEN]))
+             | (bishopAttacks(sq, occupied) & (p[Piece.BISHOP] | p[Piece.QUEEN]));
+    }
+
+    /**
+     * Returns the material a capture wins once every exchange on its square is played out
+     * (static exchange evaluation). Each side recaptures with its least valuable attacker and
+     * may stop whenever recapturing would lose material. Sliders behind a piece that takes part
+     * (x-rays) join the exchange once it leaves, but pins and checks are ignored.
+     * @param move the packed capture, to be made by the side to move
+     * @return the material won in Piece.VALUES units, negative if the capture loses material
+     */
+    public int see(int move)
+    {
+        int to = Move.to(move);
+        int victim = Move.victim(move);
+        long occupied = (occupancy[WHITE] | occupancy[BLACK]) ^ (1L << Move.from(move));
+        long diagonal = pieces[WHITE][Piece.BISHOP] | pieces[BLACK][Piece.BISHOP]
+                      | pieces[WHITE][Piece.QUEEN] | pieces[BLACK][Piece.QUEEN];
+        long straight = pieces[WHITE][Piece.ROOK] | pieces[BLACK][Piece.ROOK]
+                      | pieces[WHITE][Piece.QUEEN] | pieces[BLACK][Piece.QUEEN];
+        long attackers = (attackersTo(to, WHITE, occupied) | attackersTo(to, BLACK, occupied))
+                       & occupied;
+        int[] gain = swapList;
+        gain[0] = victim < 0 ? 0 : Piece.VALUES[victim];
+        int onSquare = Move.type(move);
+        int side = 1 - Move.side(move);
+        int d = 0;
+        while (true)
+        {
+            long mine = attackers & occupancy[side];
+            if (mine == 0)
+                break;
+            int type = Piece.PAWN;
+            while ((mine & pieces[side][type]) == 0)
+                type++;
+            long from = Long.lowestOneBit(mine & pieces[side][type]);
+            d++;
+            gain[d] = Piece.VALUES[onSquare] - gain[d - 1];
+            occupied ^= from;
+            attackers = (attackers | (rookAttacks(to, occupied) & straight)
+                                   | (bishopAttacks(to, occupied) & diagonal)) & occupied;
+            onSquare = type;
+            side = 1 - side;
+        }
+        //each side only recaptures if that is better than stopping
+        for (; d > 0; d--)
+            gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+        return gain[0];
+    }
+
+    /**
+     * Returns the enemy sliders that would attack a king if only enemy pieces blocked them
+     * @param king the square of the king
+     * @param side the side of the king
+     * @return the bitboard of enemy rooks, bishops, and queens lined up with the king
+     */
+    private long snipers(int king, int side)
+    {
+        long[] p = pieces[1 - side];
+        long enemy = occupancy[1 - side];
+        return (rookAttacks(king, enemy) & (p[Piece.ROOK] | p[Piece.QUEEN]))
+             | (bishopAttacks(king, enemy) & (p[Piece.BISHOP] | p[Piece.QUEEN]));
+    }
+
+    /**
+     * Returns the pieces of one side that are pinned to their king, i.e. the only piece standing
+     * between the king and an enemy slider
+     * @param king the square of the king
+     * @param side the side of the king
+     * @param snipers the enemy sliders lined up with the king
+     * @param occupied the bitboard of all occupied squares
+     * @return the bitboard of pinned pieces
+     */
+    private long pinnedPieces(int king, int side, long snipers, long occupied)
+    {
+        long pinned = 0;
+        while (snipers != 0)
+        {
+            long blockers = BETWEEN[king][Long.numberOfTrailingZeros(snipers)] & occupied;
+            if ((blockers & (blockers - 1)) == 0)
+                pinned |= blockers & occupancy[side];
+            snipers &= snipers - 1;
+        }
+        return pinned;
+    }
+
+    /**
+     * Returns the squares a pinned piece may move to: between its king and the pinning slider,
+     * or onto the slider itself
+     * @param king the square of the king
+     * @param from the square of the pinned piece
+     * @param snipers the enemy sliders lined up with the king
+     * @return the bitboard of squares that keep the pin closed
+     */
+    private long pinRay(int king, int from, long snipers)
+    {
+        while (snipers != 0)
+        {
+            int s = Long.numberOfTrailingZeros(snipers);
+            if ((BETWEEN[king][s] & (1L << from)) != 0)
+                return BETWEEN[king][s] | (1L << s);
+            snipers &= snipers - 1;
+        }
+        return ~0L;
+    }
+
+    /**
+     * Returns the squares a king can move to without stepping onto a square the other side
+     * attacks. The king is taken off the board first, so it cannot retreat along a checking ray.
+     * @param king the square of the king
+     * @param side the side of the king
+     * @return the bitboard of destination squares
+     */
+    private long kingDestinations(int king, int side)
+    {
+        long occupied = (occupancy[WHITE] | occupancy[BLACK]) & ~(1L << king);
+        long candidates = KING_ATTACKS[king] & ~occupancy[side];
+        long dests = candidates;
+        while (candidates != 0)
+        {
+            int to = Long.numberOfTrailingZeros(candidates);
+            if (attackersTo(to, 1 - side, occupied) != 0)
+                dests &= ~(1L << to);
+            candidates &= candidates - 1;
+        }
+        return dests;
+    }
+
+    /**
+     * Returns whether a king of one side could be captured by the other side
+     * @param side WHITE or BLACK
+     * @return true if any king of the side is attacked
+     */
+    public boolean inCheck(int side)
+    {
+        long kings = pieces[side][Piece.KING];
+        while (kings != 0)
+        {
+            if (isAttacked(Long.numberOfTrailingZeros(kings), 1 - side))
+                return true;
+            kings &= kings - 1;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the squares the piece on a square could move to, ignoring whether its king is
+     * left in check. Follows the same rules as the destinations() methods of the pieces.
+     * @param sq the square of the piece
+     * @return the bitboard of destination squares
+     */
+    public long destinations(int sq)
+    {
+        int side = mailbox[sq] >> 3;
+        long own = occupancy[side];
+        long occupied = own | occupancy[1 - side];
+        switch (typeAt(sq))
+        {
+            case Piece.PAWN:
+                return pawnDestinations(sq, side, occupied);
+            case Piece.KNIGHT:
+                return KNIGHT_ATTACKS[sq] & ~own;
+            case Piece.BISHOP:
+                return bishopAttacks(sq, occupied) & ~own;
+            case Piece.ROOK:
+                return rookAttacks(sq, occupied) & ~own;
+            case Piece.QUEEN:
+                return (rookAttacks(sq, occupied) | bishopAttacks(sq, occupied)) & ~own;
+            default:
+                return KING_ATTACKS[sq] & ~own;
+        }
+    }
+
+    //pawn pushes (the double step needs both squares empty) and captures
+    private long pawnDestinations(int sq, int side, long occupied)
+    {
+        int row = sq / 8;
+        long dests = PAWN_ATTACKS[side][sq] & occupancy[1 - side];
+        long push;
+        if (side == WHITE)
+        {
+            push = row > 0 ? (1L << (sq - 8)) & ~occupied : 0;
+            if (row == 6 && push != 0)
+                push |= (1L << (sq - 16)) & ~occupied;
+        }
+        else
+        {
+            push = row < 7 ? (1L << (sq + 8)) & ~occupied : 0;
+            if (row == 1 && push != 0)
+                push |= (1L << (sq + 16)) & ~occupied;
+        }
+        return dests | push;
+    }
+
 	/**
      * Precondition:  move has already been made on the board
 	 * Postcondition: piece has moved back to its source,
@@ -34,7 +765,7 @@ public class Board extends BoundedGrid<Piece>
 		if (victim != null)
 			victim.putSelfInGrid(piece.getBoard(), dest);
 	}
-    
+
     /**
      * Returns a list of all legal moves that could be made by one player
      * @param color the color of the player
@@ -42,41 +773,222 @@ public class Board extends BoundedGrid<Piece>
      */
     public ArrayList<Move> allMoves(Color color)
     {
-        ArrayList<Move> moves = possibleMoves(color);
-        Iterator<Move> it = moves.iterator();
-        while(it.hasNext())
-        {
-            Move m = it.next();
-            executeMove(m);
-            Color c = Color.BLACK;
-            if(color == Color.BLACK) c = Color.WHITE;
-            ArrayList<Move> responses = possibleMoves(c);
-            boolean remove = false;
-            for(Move r : responses)
-                if(r.getVictim() instanceof King)
-                    remove = true;
-            if(remove) it.remove();
-            undoMove(m);
-        }
+        int[] packed = new int[256];
+        int count = generateMoves(side(color), packed, 0);
+        ArrayList<Move> moves = new ArrayList<Move>(count);
+        for (int i = 0; i < count; i++)
+            moves.add(toMove(packed[i]));
         return moves;
     }
 
     /**
-     * Returns a list of all moves that could be made by one player (including illegal king moves)
-     * @param color the color of the player
-     * @return and arraylist of all the moves the player could make
+     * Returns the Move object for a packed move of the current position
+     * @param move the packed move
+     * @return a move of the piece on the source square to the destination square
      */
-    private ArrayList<Move> possibleMoves(Color color)
+    public Move toMove(int move)
     {
-        ArrayList<Move> moves = new ArrayList<Move>();
-        for(Location l : getOccupiedLocations())
+        return new Move(squares[Move.from(move)], LOCATIONS[Move.to(move)]);
+    }
+
+    /**
+     * Returns the packed form of a move
+     * @param move a move of a piece on this board
+     * @return the packed move
+     */
+    public static int pack(Move move)
+    {
+        Piece victim = move.getVictim();
+        return Move.pack(square(move.getSource()), square(move.getDestination()),
+                         move.getPiece().getType(), victim == null ? -1 : victim.getType(),
+                         side(move.getPiece().getColor()));
+    }
+
+    /**
+     * Writes the legal moves of one side into a buffer as packed moves. Moves are filtered using
+     * the checkers of the king, the pieces pinned to it, and the squares around it that the
+     * opponent attacks, so no move is played and no opponent reply is generated.
+     * @param side WHITE or BLACK
+     * @param moves the buffer, which must have room for every move (256 is always enough)
+     * @param start the index to write the first move at
+     * @return the index after the last move written
+     */
+    public int generateMoves(int side, int[] moves, int start)
+    {
+        return generate(side, moves, start, ~0L);
+    }
+
+    /**
+     * Writes the legal captures of one side into a buffer as packed moves
+     * @param side WHITE or BLACK
+     * @param moves the buffer, which must have room for every capture
+     * @param start the index to write the first move at
+     * @return the index after the last move written
+     */
+    public int generateCaptures(int side, int[] moves, int start)
+    {
+        return generate(side, moves, start, occupancy[1 - side]);
+    }
+
+    /**
+     * Writes the legal moves of one side to a set of squares into a buffer as packed moves
+     * @param side WHITE or BLACK
+     * @param moves the buffer
+     * @param start the index to write the first move at
+     * @param targets the bitboard of allowed destination squares
+     * @return the index after the last move written
+     */
+    private int generate(int side, int[] moves, int start, long targets)
+    {
+        long kings = pieces[side][Piece.KING];
+        if (Long.bitCount(kings) != 1)
+            return filterLegal(moves, start, generatePseudoMoves(side, moves, start, targets), side);
+
+        int king = Long.numberOfTrailingZeros(kings);
+        long own = occupancy[side];
+        long occupied = own | occupancy[1 - side];
+        long checkers = attackersTo(king, 1 - side, occupied);
+        long snipers = snipers(king, side);
+        long pinned = pinnedPieces(king, side, snipers, occupied);
+
+        //a non-king move must capture the checker or block its ray; double check allows neither
+        long checkMask = ~0L;
+        if (checkers != 0)
+            checkMask = Long.bitCount(checkers) > 1 ? 0
+                        : checkers | BETWEEN[king][Long.numberOfTrailingZeros(checkers)];
+
+        int end = start;
+        while (own != 0)
         {
-            Piece p = get(l);
-            if(p.getColor().equals(color))
-                for(Location d : p.destinations())
-                    moves.add(new Move(p, d));
+            int from = Long.numberOfTrailingZeros(own);
+            own &= own - 1;
+            long dests;
+            if (from == king)
+                dests = kingDestinations(king, side) & targets;
+            else
+            {
+                dests = destinations(from) & checkMask & targets;
+                if ((pinned & (1L << from)) != 0)
+                    dests &= pinRay(king, from, snipers);
+            }
+            end = addMoves(moves, end, from, dests, side);
+        }
+        return end;
+    }
+
+    /**
+     * Writes the moves of one side into a buffer (including illegal king moves)
+     * @param side WHITE or BLACK
+     * @param moves the buffer
+     * @param start the index to write the first move at
+     * @param targets the bitboard of allowed destination squares
+     * @return the index after the last move written
+     */
+    private int generatePseudoMoves(int side, int[] moves, int start, long targets)
+    {
+        int end = start;
+        long own = occupancy[side];
+        while (own != 0)
+        {
+            int from = Long.numberOfTrailingZeros(own);
+            own &= own - 1;
+            end = addMoves(moves, end, from, destinations(from) & targets, side);
+        }
+        return end;
+    }
+
+    //packs the moves of the piece on a square to each destination into a buffer
+    private int addMoves(int[] moves, int end, int from, long dests, int side)
+    {
+        int type = typeAt(from);
+        while (dests != 0)
+        {
+            int to = Long.numberOfTrailingZeros(dests);
+            dests &= dests - 1;
+            moves[end++] = Move.pack(from, to, type, typeAt(to), side);
+        }
+        return end;
+    }
+
+    /**
+     * Removes the moves that leave a king of the mover attacked, by playing each one. Used when
+     * the side does not have exactly one king.
+     * @param moves the buffer of moves
+     * @param start the index of the first move
+     * @param end the index after the last move
+     * @param side the side making the moves
+     * @return the index after the last legal move, which are kept in order from start
+     */
+    private int filterLegal(int[] moves, int start, int end, int side)
+    {
+        int legal = start;
+        for (int i = start; i < end; i++)
+        {
+            makeMove(moves[i]);
+            if (!inCheck(side))
+                moves[legal++] = moves[i];
+            unmakeMove(moves[i]);
+        }
+        return legal;
+    }
+
+    /**
+     * Plays a packed move on the bitboards, mailbox, key, and evaluation only; the grid and the Piece objects
+     * are left as they were, so the search can play moves without allocating or moving pieces.
+     * Each makeMove must be undone with unmakeMove before the grid is used again.
+     * @param move the packed move
+     */
+    public void makeMove(int move)
+    {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int type = Move.type(move);
+        int victim = Move.victim(move);
+        int side = Move.side(move);
+        long fromTo = (1L << from) | (1L << to);
+        pieces[side][type] ^= fromTo;
+        occupancy[side] ^= fromTo;
+        key ^= ZOBRIST[side][type][from] ^ ZOBRIST[side][type][to];
+        placement[side] += pieceSquare(side, type, to) - pieceSquare(side, type, from);
+        if (victim >= 0)
+        {
+            pieces[1 - side][victim] ^= 1L << to;
+            occupancy[1 - side] ^= 1L << to;
+            key ^= ZOBRIST[1 - side][victim][to];
+            material[1 - side] -= Piece.VALUES[victim];
+            placement[1 - side] -= pieceSquare(1 - side, victim, to);
+        }
+        mailbox[to] = mailbox[from];
+        mailbox[from] = 0;
+    }
+
+    /**
+     * Takes back a packed move played with makeMove
+     * @param move the packed move
+     */
+    public void unmakeMove(int move)
+    {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int type = Move.type(move);
+        int victim = Move.victim(move);
+        int side = Move.side(move);
+        long fromTo = (1L << from) | (1L << to);
+        pieces[side][type] ^= fromTo;
+        occupancy[side] ^= fromTo;
+        key ^= ZOBRIST[side][type][from] ^ ZOBRIST[side][type][to];
+        placement[side] -= pieceSquare(side, type, to) - pieceSquare(side, type, from);
+        mailbox[from] = mailbox[to];
+        mailbox[to] = 0;
+        if (victim >= 0)
+        {
+            pieces[1 - side][victim] ^= 1L << to;
+            occupancy[1 - side] ^= 1L << to;
+            key ^= ZOBRIST[1 - side][victim][to];
+            material[1 - side] += Piece.VALUES[victim];
+            placement[1 - side] += pieceSquare(1 - side, victim, to);
+            mailbox[to] = (byte) ((1 - side) * 8 + victim + 1);
         }
-        return moves;
     }
 
     /**
@@ -87,4 +999,4 @@ public class Board extends BoundedGrid<Piece>
     {
 		move.getPiece().moveTo(move.getDestination());
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,9 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.*;
+import javax.swing.border.Border;
 
 // Used to display the contents of a game board
 public class BoardDisplay implements ActionListener
@@ -8,10 +11,16 @@ public class BoardDisplay implements ActionListener
 	private Board board;
 	private JButton[][] grid;
 	private Piece selectedPiece;
-	private Move selectedMove;
+	// The request for a move the next selection completes, or null if no move is wanted
+	private AtomicReference<CompletableFuture<Move>> request =
+		new AtomicReference<CompletableFuture<Move>>();
 	private JFrame frame;
 	private Color[][] colors;
 
+	// Piece icons by image file and square borders by color, loaded once and shared by all displays
+	private static final ConcurrentHashMap<String, Icon> ICONS = new ConcurrentHashMap<String, Icon>();
+	private static final ConcurrentHashMap<Color, Border> BORDERS = new ConcurrentHashMap<Color, Border>();
+
 	// Constructs a new display for displaying the given board
 	public BoardDisplay(Board board)
 	{
@@ -100,14 +109,18 @@ public class BoardDisplay implements ActionListener
 		{
 			//we are deselecting the piece
 			selectedPiece = null;
-			selectedMove = null;
 			clearColors();
 		}
 		else
 		{
-			//we have selected a move
-			selectedMove = new Move(selectedPiece, loc);
-			setColor(loc, Color.YELLOW);
+			//we have selected a move, which is handed to the waiting request (if any)
+			Move move = new Move(selectedPiece, loc);
+			selectedPiece = null;
+			CompletableFuture<Move> future = request.get();
+			if (future != null && future.complete(move))
+				setColor(loc, Color.YELLOW);
+			else
+				clearColors();
 		}
 	}
 
@@ -116,47 +129,98 @@ public class BoardDisplay implements ActionListener
 	{
 		for (int row = 0; row < grid.length; row++)
 			for (int col = 0; col < grid[row].length; col++)
-			{
-				Location loc = new Location(row, col);
+				showSquare(row, col);
+	}
 
-				Piece piece = board.get(loc);
+	// Redraws one square to show its piece and border color.
+	private void showSquare(int row, int col)
+	{
+		Piece piece = board.get(new Location(row, col));
 
-				Icon icon = null;
-				if (piece != null)
-				{
-					//System.out.println(loc);
-					grid[row][col].setForeground(piece.getColor());
-					icon = new ImageIcon(piece.getImageFileName());
-				}
-				grid[row][col].setIcon(icon);
+		Icon icon = null;
+		if (piece != null)
+		{
+			grid[row][col].setForeground(piece.getColor());
+			icon = icon(piece.getImageFileName());
+		}
+		grid[row][col].setIcon(icon);
 
-				Color color = colors[row][col];
+		Color color = colors[row][col];
 
-				if (color == null)
-					grid[row][col].setBorder(null);
-				else
-					grid[row][col].setBorder(BorderFactory.createLineBorder(color));
+		if (color == null)
+			grid[row][col].setBorder(null);
+		else
+			grid[row][col].setBorder(BORDERS.computeIfAbsent(color, BorderFactory::createLineBorder));
+	}
+
+	// Returns the icon of an image file, loading it the first time it is asked for.
+	public static Icon icon(String fileName)
+	{
+		return ICONS.computeIfAbsent(fileName, ImageIcon::new);
+	}
+
+	// Asks the user to select a move. Returns a future that the event-dispatching thread completes
+	// with the next move the user selects, without blocking the caller, so one thread can wait on
+	// many displays. Cancelling the future (or calling cancelSelection) withdraws the request, and a
+	// new request cancels the one before it.
+	public CompletableFuture<Move> requestMove()
+	{
+		CompletableFuture<Move> future = new CompletableFuture<Move>();
+		CompletableFuture<Move> old = request.getAndSet(future);
+		if (old != null)
+			old.cancel(false);
+		future.whenComplete((move, e) -> request.compareAndSet(future, null));
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				//a piece selected before the request is forgotten
+				selectedPiece = null;
 			}
+		});
+		return future;
 	}
 
-	// Waits for the user to select a move and returns this move.
+	// Withdraws the request for a move, if there is one, so whoever waits for it gets no move.
+	public void cancelSelection()
+	{
+		CompletableFuture<Move> future = request.get();
+		if (future != null)
+			future.cancel(false);
+	}
+
+	// Waits for the user to select a move and returns this move, or null if the request was
+	// cancelled or the waiting thread was interrupted (its interrupt status is kept).
 	public Move selectMove()
 	{
+		return selectMove(0, TimeUnit.MILLISECONDS);
+	}
+
+	// Waits at most the given time (0 for no limit) for the user to select a move and returns this
+	// move, or null if the time ran out, the request was cancelled, or the waiting thread was
+	// interrupted (its interrupt status is kept).
+	public Move selectMove(long timeout, TimeUnit unit)
+	{
+		CompletableFuture<Move> future = requestMove();
 		try
 		{
-			selectedPiece = null;
-			selectedMove = null;
-			while (selectedMove == null)
-				Thread.sleep(1);
-			Move move = selectedMove;
-			selectedPiece = null;
-			selectedMove = null;
-			return move;
+			if (timeout > 0)
+				return future.get(timeout, unit);
+			return future.get();
 		}
-		catch(InterruptedException e)
+		catch (InterruptedException e)
+		{
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (TimeoutException e)
+		{
+			future.cancel(false);
+			return null;
+		}
+		catch (CancellationException | ExecutionException e)
 		{
-			e.printStackTrace();
-			System.exit(1);
 			return null;
 		}
 	}
@@ -167,19 +231,23 @@ public class BoardDisplay implements ActionListener
 		frame.setTitle(title);
 	}
 
-	// Sets the color of the border for the given location, and redraws it.
+	// Sets the color of the border for the given location, and redraws that square (with its
+	// piece, so squares changed by a move are brought up to date when they are colored).
 	public void setColor(Location loc, Color color)
 	{
 		colors[loc.getRow()][loc.getCol()] = color;
-		showBoard();
+		showSquare(loc.getRow(), loc.getCol());
 	}
 
-	// Clears all border colors and redraws the board.
+	// Clears all border colors and redraws the squares that had one.
 	public void clearColors()
 	{
 		for (int row = 0; row < colors.length; row++)
 			for (int col = 0; col < colors[row].length; col++)
-				colors[row][col] = null;
-		showBoard();
+				if (colors[row][col] != null)
+				{
+					colors[row][col] = null;
+					showSquare(row, col);
+				}
 	}
 }
\ No newline at end of file
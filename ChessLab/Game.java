@@ -7,7 +7,6 @@ import java.awt.Color;
  */
 public class Game 
 {
-    private static boolean endGame = false;
     /**
      * Runs a game of tetris, initializes board and players and then starts the game
      * @param args
@@ -15,6 +14,23 @@ public class Game
     public static void main(String[] args) 
     {
         Board board = new Board();
+        setUp(board);
+
+        BoardDisplay display = new BoardDisplay(board);
+
+        Player w = new HumanPlayer(board, Color.WHITE, "white", display);
+        SmartPlayer b = new SmartPlayer(board, Color.BLACK, "black");
+        b.setPondering(true);
+
+        play(board, display, w, b);
+    }
+
+    /**
+     * Puts the pieces of a new game on an empty board
+     * @param board the board to set up
+     */
+    public static void setUp(Board board)
+    {
         int[][] init = //1=pawn, 2=bishop, 3=knight, 4=rook, 5=queen, 6=king; - is black, + is white
         {
             {-4,-3,-2,-5,-6,-2,-3,-4},
@@ -63,13 +79,28 @@ public class Game
                     piece.putSelfInGrid(board, new Location(r, c));
                     
             }
+    }
 
-        BoardDisplay display = new BoardDisplay(board);
-
-        Player w = new HumanPlayer(board, Color.WHITE, "white", display);
-        Player b = new SmartPlayer(board, Color.BLACK, "black");
-
-        play(board, display, w, b);
+    /**
+     * Executes a move on a board, promoting a pawn that reaches the last row to a queen
+     * @param board the board the move is played on
+     * @param move the move
+     */
+    public static void executeMove(Board board, Move move)
+    {
+        board.executeMove(move);
+        Color color = move.getPiece().getColor();
+        int row = 0;
+        String colorStr = "white";
+        if(color == Color.BLACK) 
+        {
+            row = 7;
+            colorStr = "black";
+        }
+        if(move.getPiece() instanceof Pawn && move.getDestination().getRow() == row)
+        {
+            new Queen(color, colorStr+"_queen.gif").putSelfInGrid(board, move.getDestination());
+        }
     }
 
     /**
@@ -78,34 +109,22 @@ public class Game
      * @param board the chess game board the turn is played on
      * @param display to display the board and the move played
      * @param player the player to make the move
+     * @return false if the player had no move, which ends the game
      */
-    private static void nextTurn(Board board, BoardDisplay display, Player player)
+    private static boolean nextTurn(Board board, BoardDisplay display, Player player)
     {
         display.setTitle(player.getName()+" to move");
         Move move = player.nextMove();
         if(move!=null)
         {
-            board.executeMove(move);
-            int row = 0;
-            String colorStr = "white";
-            if(player.getColor() == Color.BLACK) 
-            {
-                row = 7;
-                colorStr = "black";
-            }
-            if(move.getPiece() instanceof Pawn && move.getDestination().getRow() == row)
-            {
-                new Queen(player.getColor(), colorStr+"_queen.gif").putSelfInGrid(board, move.getDestination());
-            }
+            executeMove(board, move);
             display.clearColors();
             display.setColor(move.getSource(), Color.PINK);
             display.setColor(move.getDestination(), Color.PINK);
+            return true;
         }
-        else
-        {
-            display.setTitle(player.getName()+" loses");
-            endGame = true;
-        }
+        display.setTitle(player.getName()+" loses");
+        return false;
     }
 
     /**
@@ -118,11 +137,12 @@ public class Game
      */
     public static void play(Board board, BoardDisplay display, Player white, Player black)
     {
-        while(!endGame)
+        boolean playing = true;
+        while(playing)
         {
-            nextTurn(board, display, white);
-            if(!endGame)
-                nextTurn(board, display, black);
+            playing = nextTurn(board, display, white);
+            if(playing)
+                playing = nextTurn(board, display, black);
         }
     }
 }
@@ -1,5 +1,6 @@
 import java.awt.Color;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HumanPlayer class represents a chess player, it has a chess board, color, and name that it can return
@@ -11,6 +12,9 @@ public class HumanPlayer extends Player
 {
     private BoardDisplay display;
 
+    //how long the human may take for each move in milliseconds, 0 for no limit
+    private long timeLimit;
+
     /**
      * Constructs a new player with a chess board, color, name, and display for the board
      * @param b the chess board
@@ -24,19 +28,52 @@ public class HumanPlayer extends Player
         display = disp;
     }
 
+    /**
+     * Sets how long the human may take for each move
+     * @param millis the time in milliseconds, 0 for no limit
+     */
+    public void setTimeLimit(long millis)
+    {
+        if(millis < 0)
+            throw new IllegalArgumentException("time limit < 0");
+        timeLimit = millis;
+    }
+
+    /**
+     * Returns how long the human may take for each move
+     * @return the time in milliseconds, 0 for no limit
+     */
+    public long getTimeLimit()
+    {
+        return timeLimit;
+    }
+
     /**
      * Gets the next move the human player will make through the display, returns the move if valid, null
      * otherwise
-     * @return the move the human player makes, null if it cant make any moves
+     * @return the move the human player makes, null if it cant make any moves, or if the time limit
+     *         ran out or the display's request was cancelled
      */
     public Move nextMove()
     {
         ArrayList<Move> moves = getBoard().allMoves(getColor());
         if(moves.size()==0)
             return null;
+        long deadline = System.nanoTime() + timeLimit * 1000000;
         while(true)
         {
-            Move move = display.selectMove();
+            Move move;
+            if(timeLimit == 0)
+                move = display.selectMove();
+            else
+            {
+                long left = deadline - System.nanoTime();
+                if(left <= 0)
+                    return null;
+                move = display.selectMove(left, TimeUnit.NANOSECONDS);
+            }
+            if(move == null)
+                return null;
             for(Move m : moves)
                 if(m.equals(move))
                     return move;
@@ -16,7 +16,16 @@ public class King extends Piece
      */
     public King(Color col, String fileName)
     {
-        super(col, fileName, 1000);
+        super(col, fileName, VALUES[KING]);
+    }
+
+    /**
+     * Returns the type code of this piece
+     * @return Piece.KING
+     */
+    public int getType()
+    {
+        return KING;
     }
 
     /**
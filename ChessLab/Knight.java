@@ -16,7 +16,16 @@ public class Knight extends Piece
      */
     public Knight(Color col, String fileName)
     {
-        super(col, fileName, 3);
+        super(col, fileName, VALUES[KNIGHT]);
+    }
+
+    /**
+     * Returns the type code of this piece
+     * @return Piece.KNIGHT
+     */
+    public int getType()
+    {
+        return KNIGHT;
     }
 
     /**
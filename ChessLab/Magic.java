@@ -0,0 +1,293 @@
+import java.util.*;
+
+/**
+ * Magic class looks up the squares a rook or bishop attacks with magic bitboards. For each square
+ * the pieces that could block the slider (its relevant occupancy, which leaves out the edge of the
+ * board) are multiplied by a magic number, and the top bits of the product index a table of
+ * precomputed attacks, so an attack set costs a mask, a multiply, a shift, and a load instead of a
+ * walk along each ray. The tables are filled when the class is loaded, which takes some tens of
+ * milliseconds (kept in getInitNanos). The magic numbers below were found by trying sparse random
+ * numbers until one mapped every occupancy of the square to a slot holding its attacks; finding
+ * them takes about a second, so they are not searched for at startup, but running this class
+ * prints a fresh set. Squares are numbered as on the Board, row * 8 + col.
+ * @author Harrison Chen
+ * @version 5/9/23
+ */
+public class Magic
+{
+    //the directions of each slider as row and column steps
+    private static final int[][] ROOK_STEPS = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}};
+    private static final int[][] BISHOP_STEPS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    //the magic number of each square
+    private static final long[] ROOK_MAGICS =
+    {
+        0x4080004001291280L, 0x2440200040021001L, 0x008020008010000aL,
+        0x0480100080080204L, 0x1001002040800810L, 0x05000a1100240008L,
+        0x1080010010802200L, 0x4100142081000042L, 0x8258800080400030L,
+        0x0010c01000402000L, 0x0082002012008041L, 0x4041800800300081L,
+        0x2018800401820800L, 0x0002000200081004L, 0x0002002422000148L,
+        0x080a000209209044L, 0x2880004000200040L, 0x2040008080402000L,
+        0x0040828010002000L, 0x8200808008001000L, 0x0408004004004200L,
+        0x0000808004000200L, 0x2000808001000200L, 0x0220820000804421L,
+        0x0000400080208002L, 0x4001008900400020L, 0x2000481100200100L,
+        0x1200102200420008L, 0x1008020040400400L, 0x0c00020080800400L,
+        0x8a00280400028110L, 0x2848004200040899L, 0x0080002001400040L,
+        0x8010220082004900L, 0x4800820442001020L, 0x0800801000800800L,
+        0x0020080080800400L, 0x4182040080800200L, 0x4020020001010004L,
+        0x1120800060800100L, 0x0020400080208006L, 0x0040008100410030L,
+        0x8010002804002000L, 0x4010008008048010L, 0x0c50080004008080L,
+        0x1a02000408020010L, 0x2100010002008080L, 0x0080008061020004L,
+        0x3810804201003200L, 0x0020002040008080L, 0x320a112001004100L,
+        0x0400800802100280L, 0x1008000804110100L, 0x0602008002040080L,
+        0x0c00c10210280400L, 0x0000004100840200L, 0x2000a41041098001L,
+        0x1888902301884003L, 0x000a002008104082L, 0x0820210004081001L,
+        0x4122002004100802L, 0x8002000810444102L, 0x4100010088102204L,
+        0x000004a401148242L
+    };
+    private static final long[] BISHOP_MAGICS =
+    {
+        0x10c0080830404042L, 0x080821840c004002L, 0x000c080610533001L,
+        0x9424410420000c00L, 0x0104050400088800L, 0x0000829040805000L,
+        0x0500410820112290L, 0x00030108061104b0L, 0x0280114218084480L,
+        0x0201025022020444L, 0x1800840104170080L, 0x0400044040800800L,
+        0x402024042000f401L, 0xa000053008200000L, 0x4002024e1004a00bL,
+        0x2080002208640400L, 0x0804001010c22808L, 0x00a0210808008090L,
+        0x0088801001244101L, 0x004802022200c000L, 0x2802000404a2000aL,
+        0x2000200202100220L, 0xa1210180841002a0L, 0x1001020441080140L,
+        0x4060040220091214L, 0x5010084044288080L, 0x0084110092060400L,
+        0x02600800010104a0L, 0x4830030000200800L, 0x0200808018080440L,
+        0x0808010002089200L, 0x4004484a0a050401L, 0x0108084040040400L,
+        0x0008018400102400L, 0x0c17180800340040L, 0x5010080800220a00L,
+        0x8214200200202080L, 0x0402604100c20082L, 0x0408010440112800L,
+        0x0002104204004201L, 0x1060844560004000L, 0x5001010121185020L,
+        0x0002002208008100L, 0x0020006081220800L, 0x0400a81010404400L,
+        0x04c1210102000100L, 0x0342900620880600L, 0x9002020222000428L,
+        0x4404881802100200L, 0x0000410410021488L, 0x0000020442088c32L,
+        0x4120008020880008L, 0x4000000405040004L, 0x0018400244010000L,
+        0x0022020228011008L, 0x2021440102002041L, 0x0041920202204c08L,
+        0x0900088208010400L, 0x3080da0044140450L, 0x0004502040840402L,
+        0xa000400020085040L, 0x00008010a0011100L, 0x2000200204081080L,
+        0x1022241022020420L
+    };
+
+    //the relevant occupancy of each square, the shift that leaves the index bits of the
+    //product, and where its slots start in the table
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final int[] ROOK_OFFSETS = new int[64];
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final int[] BISHOP_OFFSETS = new int[64];
+
+    //the attacks of every square's occupancies, one slot per index
+    private static final long[] ROOK_TABLE;
+    private static final long[] BISHOP_TABLE;
+
+    //how long building the tables took
+    private static final long INIT_NANOS;
+
+    static
+    {
+        long start = System.nanoTime();
+        ROOK_TABLE = build(ROOK_STEPS, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS, ROOK_OFFSETS);
+        BISHOP_TABLE = build(BISHOP_STEPS, BISHOP_MASKS, BISHOP_MAGICS, BISHOP_SHIFTS,
+                             BISHOP_OFFSETS);
+        INIT_NANOS = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the squares a rook on a square attacks
+     * @param sq the square
+     * @param occupied the bitboard of all occupied squares
+     * @return the attacked squares, up to and including the first occupied square of each ray
+     */
+    public static long rookAttacks(int sq, long occupied)
+    {
+        return ROOK_TABLE[ROOK_OFFSETS[sq]
+                          + (int) (((occupied & ROOK_MASKS[sq]) * ROOK_MAGICS[sq])
+                                   >>> ROOK_SHIFTS[sq])];
+    }
+
+    /**
+     * Returns the squares a bishop on a square attacks
+     * @param sq the square
+     * @param occupied the bitboard of all occupied squares
+     * @return the attacked squares, up to and including the first occupied square of each ray
+     */
+    public static long bishopAttacks(int sq, long occupied)
+    {
+        return BISHOP_TABLE[BISHOP_OFFSETS[sq]
+                            + (int) (((occupied & BISHOP_MASKS[sq]) * BISHOP_MAGICS[sq])
+                                     >>> BISHOP_SHIFTS[sq])];
+    }
+
+    /**
+     * Returns how long filling the attack tables took when the class was loaded (the magic
+     * numbers are precomputed, see main)
+     * @return the time in nanoseconds
+     */
+    public static long getInitNanos()
+    {
+        return INIT_NANOS;
+    }
+
+    /**
+     * Returns the number of attack sets held by the tables of both sliders
+     * @return the slot count
+     */
+    public static int getTableSize()
+    {
+        return ROOK_TABLE.length + BISHOP_TABLE.length;
+    }
+
+    /**
+     * Fills the table of one slider
+     * @param steps the directions of the slider
+     * @param masks set to the relevant occupancy of each square
+     * @param magics the magic number of each square
+     * @param shifts set to 64 minus the number of relevant squares of each square
+     * @param offsets set to the first slot of each square
+     * @return the table of attacks
+     * @throws IllegalStateException if a magic number sends two occupancies with different
+     *         attacks to the same slot
+     */
+    private static long[] build(int[][] steps, long[] masks, long[] magics, int[] shifts,
+                                int[] offsets)
+    {
+        int size = 0;
+        for (int sq = 0; sq < 64; sq++)
+        {
+            masks[sq] = slide(steps, sq, 0) & ~edges(sq);
+            shifts[sq] = 64 - Long.bitCount(masks[sq]);
+            offsets[sq] = size;
+            size += 1 << Long.bitCount(masks[sq]);
+        }
+        long[] table = new long[size];
+        boolean[] filled = new boolean[size];
+        for (int sq = 0; sq < 64; sq++)
+        {
+            //every subset of the mask, by the carry-rippler trick
+            long subset = 0;
+            do
+            {
+                long attacks = slide(steps, sq, subset);
+                int slot = offsets[sq] + (int) ((subset * magics[sq]) >>> shifts[sq]);
+                if (filled[slot] && table[slot] != attacks)
+                    throw new IllegalStateException("Bad magic number for square " + sq);
+                table[slot] = attacks;
+                filled[slot] = true;
+                subset = (subset - masks[sq]) & masks[sq];
+            }
+            while (subset != 0);
+        }
+        return table;
+    }
+
+    /**
+     * Finds a magic number for a square
+     * @param steps the directions of the slider
+     * @param sq the square
+     * @param random the source of candidate numbers
+     * @return a number that maps every occupancy of the square's mask to a slot holding its
+     *         attacks
+     */
+    public static long find(int[][] steps, int sq, Random random)
+    {
+        long mask = slide(steps, sq, 0) & ~edges(sq);
+        int shift = 64 - Long.bitCount(mask);
+        int n = 1 << Long.bitCount(mask);
+        long[] occupancies = new long[n];
+        long[] attacks = new long[n];
+        long subset = 0;
+        for (int i = 0; i < n; i++)
+        {
+            occupancies[i] = subset;
+            attacks[i] = slide(steps, sq, subset);
+            subset = (subset - mask) & mask;
+        }
+        long[] table = new long[n];
+        //the attempt that last wrote each slot, so slots need not be cleared between attempts
+        int[] written = new int[n];
+        for (int attempt = 1; ; attempt++)
+        {
+            long magic = random.nextLong() & random.nextLong() & random.nextLong();
+            //a magic needs enough bits to carry the mask into the top of the product
+            if (Long.bitCount((mask * magic) & 0xff00000000000000L) < 6)
+                continue;
+            boolean fits = true;
+            for (int i = 0; i < n && fits; i++)
+            {
+                int slot = (int) ((occupancies[i] * magic) >>> shift);
+                if (written[slot] != attempt)
+                {
+                    written[slot] = attempt;
+                    table[slot] = attacks[i];
+                }
+                else if (table[slot] != attacks[i])
+                    fits = false;
+            }
+            if (fits)
+                return magic;
+        }
+    }
+
+    /**
+     * Prints a fresh set of magic numbers for the rook and bishop
+     * @param args a seed for the random numbers, optional
+     */
+    public static void main(String[] args)
+    {
+        Random random = args.length > 0 ? new Random(Long.parseLong(args[0])) : new Random();
+        long start = System.nanoTime();
+        for (int[][] steps : new int[][][] {ROOK_STEPS, BISHOP_STEPS})
+        {
+            System.out.print(steps == ROOK_STEPS ? "rook" : "bishop");
+            for (int sq = 0; sq < 64; sq++)
+                System.out.print((sq % 3 == 0 ? "\n    " : " ")
+                                 + String.format("0x%016xL,", find(steps, sq, random)));
+            System.out.println();
+        }
+        System.out.println("found in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Returns the squares a slider attacks by walking its rays
+     * @param steps the directions of the slider
+     * @param sq the square of the slider
+     * @param occupied the bitboard of the squares that block it
+     * @return the attacked squares
+     */
+    private static long slide(int[][] steps, int sq, long occupied)
+    {
+        long attacks = 0;
+        for (int[] step : steps)
+            for (int row = sq / 8 + step[0], col = sq % 8 + step[1];
+                 row >= 0 && row < 8 && col >= 0 && col < 8; row += step[0], col += step[1])
+            {
+                long b = 1L << (row * 8 + col);
+                attacks |= b;
+                if ((occupied & b) != 0)
+                    break;
+            }
+        return attacks;
+    }
+
+    /**
+     * Returns the edge squares that never block a slider on a square: the first and last rows
+     * and columns, except the ones the square itself is on
+     * @param sq the square
+     * @return the bitboard of edge squares to leave out of its mask
+     */
+    private static long edges(int sq)
+    {
+        long firstRow = 0xffL;
+        long lastRow = 0xffL << 56;
+        long firstCol = 0x0101010101010101L;
+        long lastCol = firstCol << 7;
+        int row = sq / 8;
+        int col = sq % 8;
+        return ((firstRow | lastRow) & ~(0xffL << (8 * row)))
+             | ((firstCol | lastCol) & ~(firstCol << col));
+    }
+}
@@ -0,0 +1,530 @@
+import java.awt.Color;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * Match class plays many games between two players without a display, several games at once,
+ * and writes one CSV line per game as each finishes. The players swap colors every game, and
+ * each pair of games starts from the same few random moves, so deterministic players do not
+ * play the same game over and over. A player loses by being checkmated or stalemated (having no
+ * legal move loses, as in Game and the search), resigning (returning null with legal moves left),
+ * playing an illegal move, or taking longer than the move time plus a margin; with a move time,
+ * each move runs on its own thread and a player that overruns is stopped (SmartPlayers through
+ * stop, other players by an interrupt). A game is drawn by threefold repetition, bare kings, or
+ * the ply limit.
+ * Usage: java Match games first second [movetime [threads [file]]]
+ *        first and second are random or smart:depth (e.g. smart:4), movetime is in
+ *        milliseconds (0 for fixed depth searches), file defaults to match.csv
+ * @author Harrison Chen
+ * @version 4/28/23
+ */
+public class Match
+{
+    //the first line of the CSV file
+    public static final String HEADER = "game,white,black,result,reason,plies,white_ms,black_ms,"
+                                        + "white_nodes,black_nodes,white_nps,black_nps";
+
+    //names of the players, and how to create each for a game
+    private String firstName;
+    private String secondName;
+    private BiFunction<Board, Color, Player> first;
+    private BiFunction<Board, Color, Player> second;
+
+    //time allowed per move in milliseconds (0 for no limit), and how far a move may go over it
+    private long moveTime;
+    private long timeMargin = 100;
+
+    //number of plies after which a game is drawn
+    private int maxPlies = 400;
+
+    //number of random moves each game starts with
+    private int openingPlies = 4;
+
+    //number of games played at once
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    //results of the games played so far, from the first player's perspective
+    private int wins;
+    private int draws;
+    private int losses;
+
+    /**
+     * Constructs a new match
+     * @param firstName the name of the first player, who has white in even games
+     * @param first creates the first player for a board and color
+     * @param secondName the name of the second player
+     * @param second creates the second player for a board and color
+     */
+    public Match(String firstName, BiFunction<Board, Color, Player> first,
+                 String secondName, BiFunction<Board, Color, Player> second)
+    {
+        this.firstName = firstName;
+        this.first = first;
+        this.secondName = secondName;
+        this.second = second;
+    }
+
+    /**
+     * Sets the time allowed per move. SmartPlayers are given it as their time budget.
+     * @param millis the time in milliseconds, 0 for no limit
+     */
+    public void setMoveTime(long millis)
+    {
+        if (millis < 0)
+            throw new IllegalArgumentException("move time < 0");
+        moveTime = millis;
+    }
+
+    /**
+     * Sets how far past the move time a move may finish before its player loses on time
+     * @param millis the margin in milliseconds
+     */
+    public void setTimeMargin(long millis)
+    {
+        if (millis < 0)
+            throw new IllegalArgumentException("time margin < 0");
+        timeMargin = millis;
+    }
+
+    /**
+     * Sets the number of plies after which a game is drawn
+     * @param plies the ply limit
+     */
+    public void setMaxPlies(int plies)
+    {
+        if (plies < 1)
+            throw new IllegalArgumentException("plies < 1");
+        maxPlies = plies;
+    }
+
+    /**
+     * Sets the number of random moves each game starts with, the same for both games of a pair
+     * @param plies the number of random plies
+     */
+    public void setOpeningPlies(int plies)
+    {
+        if (plies < 0)
+            throw new IllegalArgumentException("plies < 0");
+        openingPlies = plies;
+    }
+
+    /**
+     * Sets the number of games played at once
+     * @param n the number of threads
+     */
+    public void setThreads(int n)
+    {
+        if (n < 1)
+            throw new IllegalArgumentException("threads < 1");
+        threads = n;
+    }
+
+    /**
+     * Returns the number of games the first player won
+     * @return the win count
+     */
+    public synchronized int getWins()
+    {
+        return wins;
+    }
+
+    /**
+     * Returns the number of drawn games
+     * @return the draw count
+     */
+    public synchronized int getDraws()
+    {
+        return draws;
+    }
+
+    /**
+     * Returns the number of games the first player lost
+     * @return the loss count
+     */
+    public synchronized int getLosses()
+    {
+        return losses;
+    }
+
+    /**
+     * Plays games, writing the header and then one line per game to a CSV file as the games
+     * finish (so not in game order)
+     * @param games the number of games
+     * @param csv the CSV output
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public void run(int games, PrintWriter csv) throws InterruptedException
+    {
+        csv.println(HEADER);
+        csv.flush();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int g = 0; g < games; g++)
+            pool.execute(new GameTask(g, csv));
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * GameTask plays one game of the match on a pool thread and records its result
+     */
+    private class GameTask implements Runnable
+    {
+        private int number;
+        private PrintWriter csv;
+
+        /**
+         * Constructs a task for a game
+         * @param n the number of the game
+         * @param out the CSV output
+         */
+        public GameTask(int n, PrintWriter out)
+        {
+            number = n;
+            csv = out;
+        }
+
+        /**
+         * Plays the game, then writes its line and counts its result
+         */
+        public void run()
+        {
+            Result result;
+            try
+            {
+                result = playGame(number);
+            }
+            catch (RuntimeException e)
+            {
+                result = new Result(number);
+                result.reason = "error: " + e;
+            }
+            record(result, csv);
+        }
+    }
+
+    /**
+     * Result class holds the outcome and statistics of one game
+     */
+    private static class Result
+    {
+        private int number;
+        private String white;
+        private String black;
+
+        //1 if white won, 0 for a draw, -1 if black won
+        private int winner;
+        private String reason;
+        private int plies;
+
+        //time spent and nodes searched by each side
+        private long[] nanos = new long[2];
+        private long[] nodes = new long[2];
+
+        /**
+         * Constructs the result of a game that has not been played
+         * @param n the number of the game
+         */
+        public Result(int n)
+        {
+            number = n;
+        }
+
+        /**
+         * Returns the result in the usual notation
+         * @return 1-0, 0-1, 1/2-1/2, or * if the game did not finish
+         */
+        public String score()
+        {
+            if (reason.startsWith("error"))
+                return "*";
+            return winner > 0 ? "1-0" : winner < 0 ? "0-1" : "1/2-1/2";
+        }
+
+        /**
+         * Returns the CSV line of the game
+         * @return the fields of HEADER, separated by commas
+         */
+        public String toString()
+        {
+            return number + "," + white + "," + black + "," + score() + "," + reason.replace(',', ';')
+                   + "," + plies + "," + nanos[0] / 1000000 + "," + nanos[1] / 1000000
+                   + "," + nodes[0] + "," + nodes[1] + "," + nps(nodes[0], nanos[0])
+                   + "," + nps(nodes[1], nanos[1]);
+        }
+    }
+
+    //returns the nodes per second of a count, given the time taken in nanoseconds
+    private static long nps(long nodes, long nanos)
+    {
+        return nanos == 0 ? 0 : nodes * 1000000000L / nanos;
+    }
+
+    /**
+     * Writes the line of a game and counts its result
+     * @param result the finished game
+     * @param csv the CSV output
+     */
+    private synchronized void record(Result result, PrintWriter csv)
+    {
+        csv.println(result);
+        csv.flush();
+        if (result.score().equals("*"))
+            return;
+        int firstResult = result.number % 2 == 0 ? result.winner : -result.winner;
+        if (firstResult > 0)
+            wins++;
+        else if (firstResult < 0)
+            losses++;
+        else
+            draws++;
+    }
+
+    /**
+     * Plays one game of the match. The first player has white in even games.
+     * @param number the number of the game
+     * @return the result of the game
+     */
+    private Result playGame(int number)
+    {
+        Result result = new Result(number);
+        boolean firstIsWhite = number % 2 == 0;
+        result.white = firstIsWhite ? firstName : secondName;
+        result.black = firstIsWhite ? secondName : firstName;
+
+        Board board = new Board();
+        Game.setUp(board);
+        int side = playOpening(board, new Random(number / 2));
+        Player[] players = new Player[2];
+        players[Board.WHITE] = (firstIsWhite ? first : second).apply(board, Color.WHITE);
+        players[Board.BLACK] = (firstIsWhite ? second : first).apply(board, Color.BLACK);
+        for (Player p : players)
+            if (p instanceof SmartPlayer && moveTime > 0)
+                ((SmartPlayer) p).setTimeBudget(moveTime);
+
+        ExecutorService mover = null;
+        if (moveTime > 0)
+            mover = Executors.newSingleThreadExecutor(r ->
+            {
+                Thread t = new Thread(r, "match game " + number);
+                t.setDaemon(true);
+                return t;
+            });
+        try
+        {
+            return playMoves(result, board, side, players, mover);
+        }
+        finally
+        {
+            if (mover != null)
+                mover.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays the moves of a game until it ends
+     * @param result the result of the game, to be filled in
+     * @param board the board, after the opening
+     * @param side the side to move first
+     * @param players the player of each side
+     * @param mover the thread the moves are searched on, or null if there is no move time
+     * @return the result
+     */
+    private Result playMoves(Result result, Board board, int side, Player[] players,
+                             ExecutorService mover)
+    {
+        HashMap<Long, Integer> seen = new HashMap<Long, Integer>();
+        int[] legal = new int[256];
+        while (true)
+        {
+            int count = board.generateMoves(side, legal, 0);
+            if (count == 0)
+            {
+                if (board.inCheck(side))
+                    return finish(result, side, "checkmate");
+                return finish(result, side, "stalemate");
+            }
+            if (seen.merge(board.getKey(side), 1, Integer::sum) >= 3)
+                return finish(result, -1, "repetition");
+            if (bareKings(board))
+                return finish(result, -1, "bare kings");
+            if (result.plies >= maxPlies)
+                return finish(result, -1, "ply limit");
+
+            Player player = players[side];
+            long start = System.nanoTime();
+            Move move;
+            try
+            {
+                move = nextMove(player, mover);
+            }
+            catch (TimeoutException e)
+            {
+                result.nanos[side] += System.nanoTime() - start;
+                return finish(result, side, "time");
+            }
+            long time = System.nanoTime() - start;
+            result.nanos[side] += time;
+            if (player instanceof SmartPlayer)
+                result.nodes[side] += ((SmartPlayer) player).getNodes();
+
+            if (move == null)
+                return finish(result, side, "resigned");
+            if (moveTime > 0 && time > (moveTime + timeMargin) * 1000000)
+                return finish(result, side, "time");
+            if (!contains(legal, count, Board.pack(move)))
+                return finish(result, side, "illegal move " + move);
+            Game.executeMove(board, move);
+            result.plies++;
+            side = 1 - side;
+        }
+    }
+
+    /**
+     * Asks a player for its move, waiting at most the move time plus the margin when the move
+     * runs on a thread of its own
+     * @param player the player to move
+     * @param mover the thread to search on, or null to search on this thread without a limit
+     * @return the move, or null if the player resigned
+     * @throws TimeoutException if the player was stopped for taking too long
+     */
+    private Move nextMove(Player player, ExecutorService mover) throws TimeoutException
+    {
+        if (mover == null)
+            return player.nextMove();
+        Future<Move> future = mover.submit(player::nextMove);
+        try
+        {
+            return future.get(moveTime + timeMargin, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            if (player instanceof SmartPlayer)
+                ((SmartPlayer) player).stop();
+            future.cancel(true);
+            throw e;
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(player.getName() + " failed", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while " + player.getName() + " moved", e);
+        }
+    }
+
+    /**
+     * Plays random legal moves from the start position
+     * @param board the board, set up for a new game
+     * @param random the source of the moves
+     * @return the side to move afterwards
+     */
+    private int playOpening(Board board, Random random)
+    {
+        int side = Board.WHITE;
+        int[] moves = new int[256];
+        for (int i = 0; i < openingPlies; i++)
+        {
+            int count = board.generateMoves(side, moves, 0);
+            if (count == 0)
+                break;
+            Game.executeMove(board, board.toMove(moves[random.nextInt(count)]));
+            side = 1 - side;
+        }
+        return side;
+    }
+
+    /**
+     * Ends a game
+     * @param result the result of the game
+     * @param loser the side that lost, or -1 for a draw
+     * @param reason why the game ended
+     * @return the result
+     */
+    private static Result finish(Result result, int loser, String reason)
+    {
+        result.winner = loser == Board.WHITE ? -1 : loser == Board.BLACK ? 1 : 0;
+        result.reason = reason;
+        return result;
+    }
+
+    //returns true if only the kings are left on the board
+    private static boolean bareKings(Board board)
+    {
+        long kings = board.getPieces(Board.WHITE, Piece.KING) | board.getPieces(Board.BLACK, Piece.KING);
+        return (board.getOccupancy(Board.WHITE) | board.getOccupancy(Board.BLACK)) == kings;
+    }
+
+    //returns true if a packed move is one of the first count moves of a list
+    private static boolean contains(int[] moves, int count, int move)
+    {
+        for (int i = 0; i < count; i++)
+            if (moves[i] == move)
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns a way to create the player described by a command line argument
+     * @param spec random, or smart:depth
+     * @return creates the player for a board and color
+     */
+    private static BiFunction<Board, Color, Player> player(String spec)
+    {
+        if (spec.equals("random"))
+            return (board, color) -> new RandomPlayer(board, color, spec);
+        if (spec.startsWith("smart"))
+        {
+            int depth = spec.startsWith("smart:") ? Integer.parseInt(spec.substring(6)) : 4;
+            return (board, color) ->
+            {
+                SmartPlayer p = new SmartPlayer(board, color, spec);
+                p.setDepth(depth);
+                return p;
+            };
+        }
+        throw new IllegalArgumentException("Unknown player " + spec);
+    }
+
+    /**
+     * Plays a match, then prints the first player's wins, draws, and losses
+     * @param args see the class comment
+     * @throws IOException if the CSV file cannot be written
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length < 3)
+        {
+            System.out.println("usage: java Match games first second [movetime [threads [file]]]");
+            return;
+        }
+        int games = Integer.parseInt(args[0]);
+        Match match = new Match(args[1], player(args[1]), args[2], player(args[2]));
+        if (args.length > 3)
+            match.setMoveTime(Long.parseLong(args[3]));
+        if (args.length > 4)
+            match.setThreads(Integer.parseInt(args[4]));
+        String file = args.length > 5 ? args[5] : "match.csv";
+
+        long start = System.nanoTime();
+        PrintWriter csv = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try
+        {
+            match.run(games, csv);
+        }
+        finally
+        {
+            csv.close();
+        }
+        long seconds = (System.nanoTime() - start) / 1000000000L;
+        System.out.println(args[1] + " vs " + args[2] + ": +" + match.getWins() + " ="
+                           + match.getDraws() + " -" + match.getLosses() + " in " + seconds + "s");
+    }
+}
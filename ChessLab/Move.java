@@ -1,7 +1,13 @@
 // Represents a single move, in which a piece moves to a destination location.
 // Since a move can be undone, also keeps track of the source location and any captured victim.
+// The search packs moves into an int instead (see pack), so it does not allocate Move objects:
+// bits 0-5 hold the source square, 6-11 the destination square, 12-14 the piece type,
+// 15-17 the victim type + 1 (0 for no victim), and bit 18 is set for black moves.
 public class Move
 {
+	//a packed move value that no move can have
+	public static final int NONE = 0;
+
 	private Piece piece;          //the piece being moved
 	private Location source;      //the location being moved from
 	private Location destination; //the location being moved to
@@ -19,6 +25,60 @@ public class Move
 			throw new IllegalArgumentException("Both source and dest are " + source);
 	}
 
+	//Packs a move from its squares, piece type, victim type (-1 for none), and side into an int.
+	public static int pack(int from, int to, int type, int victim, int side)
+	{
+		return from | (to << 6) | (type << 12) | ((victim + 1) << 15) | (side << 18);
+	}
+
+	//Returns the source square of a packed move
+	public static int from(int move)
+	{
+		return move & 63;
+	}
+
+	//Returns the destination square of a packed move
+	public static int to(int move)
+	{
+		return (move >>> 6) & 63;
+	}
+
+	//Returns the type of the piece moved by a packed move
+	public static int type(int move)
+	{
+		return (move >>> 12) & 7;
+	}
+
+	//Returns the type of the piece captured by a packed move, or -1 if there is none
+	public static int victim(int move)
+	{
+		return ((move >>> 15) & 7) - 1;
+	}
+
+	//Returns the side (Board.WHITE or Board.BLACK) making a packed move
+	public static int side(int move)
+	{
+		return (move >>> 18) & 1;
+	}
+
+	//Returns true if a packed move captures a piece
+	public static boolean isCapture(int move)
+	{
+		return (move & (7 << 15)) != 0;
+	}
+
+	//Returns the source and destination squares of a packed move as from * 64 + to
+	public static int squares(int move)
+	{
+		return move & 4095;
+	}
+
+	//Returns the squares of a packed move in coordinate notation, such as e2e4
+	public static String name(int move)
+	{
+		return Board.squareName(from(move)) + Board.squareName(to(move));
+	}
+
 	//Returns the piece being moved
 	public Piece getPiece()
 	{
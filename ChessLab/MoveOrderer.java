@@ -0,0 +1,229 @@
+import java.util.*;
+
+/**
+ * MoveOrderer class sorts the moves of a position so that a pruning search tries the moves most
+ * likely to cause a cutoff first: the transposition table move, then captures by most valuable
+ * victim / least valuable attacker, then the killer moves of the ply, then the other quiet moves
+ * by their history score. Given the board, captures that lose material in the exchange (see
+ * Board.see) go last, least losing first. It also keeps per-ply statistics on cutoffs.
+ * @author Harrison Chen
+ * @version 4/14/23
+ */
+public class MoveOrderer
+{
+    //the deepest ply killers and statistics are kept for
+    public static final int MAX_PLY = 128;
+
+    //sort keys of each kind of move, history scores stay below KILLER
+    private static final int HASH = 1 << 30;
+    private static final int CAPTURE = 1 << 28;
+    private static final int KILLER = 1 << 26;
+
+    //two quiet moves per ply that caused a cutoff, encoded as from * 64 + to (-1 for none)
+    private int[][] killers = new int[MAX_PLY][2];
+
+    //how often a quiet move from one square to another caused a cutoff, by side
+    private int[][][] history = new int[2][64][64];
+
+    //number of nodes that were cut off at each ply, and how many of those by the first move
+    private long[] cutoffs = new long[MAX_PLY];
+    private long[] firstMoveCutoffs = new long[MAX_PLY];
+
+    //reused sort keys, one per move of the position being sorted
+    private int[] keys = new int[256];
+
+    /**
+     * Constructs a new move orderer with no killers or history
+     */
+    public MoveOrderer()
+    {
+        clear();
+    }
+
+    /**
+     * Returns the sort key of a move, higher keys are searched first
+     * @param m the packed move
+     * @param ply the ply of the position, counting from the root
+     * @param hash the packed transposition table move, or Move.NONE
+     * @param board the board of the position, or null to order captures without exchanges
+     * @return the sort key
+     */
+    private int key(int m, int ply, int hash, Board board)
+    {
+        if (m == hash)
+            return HASH;
+        if (Move.isCapture(m))
+        {
+            //taking a piece worth at least the attacker cannot lose material
+            if (board != null && Piece.VALUES[Move.type(m)] > Piece.VALUES[Move.victim(m)])
+            {
+                int see = board.see(m);
+                if (see < 0)
+                    return see;
+            }
+            return CAPTURE + Piece.VALUES[Move.victim(m)] * 1024
+                           - Math.min(Piece.VALUES[Move.type(m)], 1023);
+        }
+        int squares = Move.squares(m);
+        if (ply < MAX_PLY && (killers[ply][0] == squares || killers[ply][1] == squares))
+            return KILLER;
+        return history[Move.side(m)][Move.from(m)][Move.to(m)];
+    }
+
+    /**
+     * Sorts the moves of a position, best first
+     * @param moves the packed moves to sort
+     * @param count the number of moves, starting at index 0
+     * @param ply the ply of the position, counting from the root
+     * @param hashMove the move stored in the transposition table for the position, or Move.NONE
+     */
+    public void order(int[] moves, int count, int ply, int hashMove)
+    {
+        order(moves, count, ply, hashMove, null);
+    }
+
+    /**
+     * Sorts the moves of a position, best first, with captures that lose material last
+     * @param moves the packed moves to sort
+     * @param count the number of moves, starting at index 0
+     * @param ply the ply of the position, counting from the root
+     * @param hashMove the move stored in the transposition table for the position, or Move.NONE
+     * @param board the board of the position, used to play out exchanges, or null
+     */
+    public void order(int[] moves, int count, int ply, int hashMove, Board board)
+    {
+        for (int i = 0; i < count; i++)
+            keys[i] = key(moves[i], ply, hashMove, board);
+
+        //insertion sort, stable so equal moves keep the board's order
+        for (int i = 1; i < count; i++)
+        {
+            int m = moves[i];
+            int k = keys[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] < k)
+            {
+                moves[j + 1] = moves[j];
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            moves[j + 1] = m;
+            keys[j + 1] = k;
+        }
+    }
+
+    /**
+     * Returns whether a quiet move is one of the killers of a ply
+     * @param m the packed move
+     * @param ply the ply of the position, counting from the root
+     * @return true if the move caused a recent cutoff at the ply
+     */
+    public boolean isKiller(int m, int ply)
+    {
+        int squares = Move.squares(m);
+        return ply < MAX_PLY && (killers[ply][0] == squares || killers[ply][1] == squares);
+    }
+
+    /**
+     * Records a move that caused a cutoff. Quiet moves become killers of the ply and gain
+     * history in proportion to the depth left.
+     * @param m the packed move
+     * @param ply the ply of the position, counting from the root
+     * @param deep the number of plies searched below the position
+     * @param index the position of the move in the ordered list
+     */
+    public void cutoff(int m, int ply, int deep, int index)
+    {
+        if (ply < MAX_PLY)
+        {
+            cutoffs[ply]++;
+            if (index == 0)
+                firstMoveCutoffs[ply]++;
+        }
+        if (Move.isCapture(m))
+            return;
+        int squares = Move.squares(m);
+        if (ply < MAX_PLY && killers[ply][0] != squares)
+        {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = squares;
+        }
+        int[] h = history[Move.side(m)][Move.from(m)];
+        h[Move.to(m)] += deep * deep;
+        if (h[Move.to(m)] >= KILLER)
+            ageHistory();
+    }
+
+    /**
+     * Prepares for a new search: forgets the killers and halves the history scores, so recent
+     * searches count most
+     */
+    public void newSearch()
+    {
+        for (int[] k : killers)
+            Arrays.fill(k, -1);
+        ageHistory();
+    }
+
+    //halves every history score
+    private void ageHistory()
+    {
+        for (int[][] side : history)
+            for (int[] from : side)
+                for (int to = 0; to < 64; to++)
+                    from[to] /= 2;
+    }
+
+    /**
+     * Forgets all killers and history, and resets the statistics
+     */
+    public void clear()
+    {
+        for (int[] k : killers)
+            Arrays.fill(k, -1);
+        for (int[][] side : history)
+            for (int[] from : side)
+                Arrays.fill(from, 0);
+        resetStatistics();
+    }
+
+    /**
+     * Resets the cutoff counters
+     */
+    public void resetStatistics()
+    {
+        Arrays.fill(cutoffs, 0);
+        Arrays.fill(firstMoveCutoffs, 0);
+    }
+
+    /**
+     * Returns the number of nodes cut off at a ply
+     * @param ply the ply, counting from the root
+     * @return the cutoff count
+     */
+    public long getCutoffs(int ply)
+    {
+        return cutoffs[ply];
+    }
+
+    /**
+     * Returns the number of nodes cut off by their first move at a ply
+     * @param ply the ply, counting from the root
+     * @return the first move cutoff count
+     */
+    public long getFirstMoveCutoffs(int ply)
+    {
+        return firstMoveCutoffs[ply];
+    }
+
+    /**
+     * Returns the fraction of cutoffs at a ply caused by the first move searched, which is near
+     * 1 when the ordering is good
+     * @param ply the ply, counting from the root
+     * @return first move cutoffs / cutoffs, or 0 if there were none
+     */
+    public double getFirstMoveRate(int ply)
+    {
+        return cutoffs[ply] == 0 ? 0 : (double) firstMoveCutoffs[ply] / cutoffs[ply];
+    }
+}
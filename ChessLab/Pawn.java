@@ -16,7 +16,16 @@ public class Pawn extends Piece
      */
     public Pawn(Color col, String fileName)
     {
-        super(col, fileName, 1);
+        super(col, fileName, VALUES[PAWN]);
+    }
+
+    /**
+     * Returns the type code of this piece
+     * @return Piece.PAWN
+     */
+    public int getType()
+    {
+        return PAWN;
     }
 
     /**
@@ -34,9 +43,13 @@ public class Pawn extends Piece
             startRow = 1;
         }
         Location check = new Location(getLocation().getRow()+y, getLocation().getCol());
+        boolean blocked = true;
         if(getBoard().isValid(check) && getBoard().get(check)==null)
+        {
             validDests.add(check);
-        if(getLocation().getRow() == startRow)
+            blocked = false;
+        }
+        if(getLocation().getRow() == startRow && !blocked)
         {
             check = new Location(getLocation().getRow()+y*2, getLocation().getCol());
             if(getBoard().isValid(check) && getBoard().get(check)==null)
@@ -0,0 +1,214 @@
+import java.awt.Color;
+import java.util.*;
+
+/**
+ * Perft class counts the leaf nodes of the move tree below a position to a fixed depth, which
+ * both benchmarks move generation and checks it against known counts. It can print the count
+ * below each root move (divide), and runs a built-in suite of standard positions.
+ * This engine has no castling, en passant, or promotion during the search, so the suite only
+ * uses positions and depths where none of them can occur.
+ * Usage: java Perft                      runs the suite
+ *        java Perft -reference           runs the suite with the Piece.destinations generator too
+ *        java Perft depth [placement side]  divides the start (or given) position
+ * @author Harrison Chen
+ * @version 4/20/23
+ */
+public class Perft
+{
+    //the piece placement of the start position, in FEN notation
+    public static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w";
+
+    //standard test positions (FEN piece placement and side to move)...
+    private static final String[] SUITE =
+    {
+        START,
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w"
+    };
+
+    //...and their known leaf counts at depth 1, 2, 3...
+    private static final long[][] COUNTS =
+    {
+        {20, 400, 8902, 197281},
+        {14, 191},
+        {46, 2079, 89890, 3894594}
+    };
+
+    /**
+     * Counts the leaf nodes below a position using the packed move generator
+     * @param board the board
+     * @param side the side to move, WHITE or BLACK
+     * @param depth the number of plies to play
+     * @return the number of move sequences of that length
+     */
+    public static long perft(Board board, int side, int depth)
+    {
+        if (depth == 0)
+            return 1;
+        return perft(board, side, depth, new int[depth][256]);
+    }
+
+    //counts leaves with one preallocated move buffer per remaining depth
+    private static long perft(Board board, int side, int depth, int[][] buffers)
+    {
+        int[] moves = buffers[depth - 1];
+        int count = board.generateMoves(side, moves, 0);
+        if (depth == 1)
+            return count;
+        long nodes = 0;
+        for (int i = 0; i < count; i++)
+        {
+            board.makeMove(moves[i]);
+            nodes += perft(board, 1 - side, depth - 1, buffers);
+            board.unmakeMove(moves[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the leaf nodes below a position the way the board originally found legal moves:
+     * each piece's destinations() are played with executeMove, and the move is dropped if any
+     * reply could capture a king. Slow, but independent of the bitboard generator apart from
+     * the slider attacks, which both look up in the Magic tables.
+     * @param board the board
+     * @param color the color to move
+     * @param depth the number of plies to play
+     * @return the number of move sequences of that length
+     */
+    public static long perftReference(Board board, Color color, int depth)
+    {
+        if (depth == 0)
+            return 1;
+        Color other = color.equals(Color.WHITE) ? Color.BLACK : Color.WHITE;
+        long nodes = 0;
+        for (Move m : referenceMoves(board, color))
+        {
+            board.executeMove(m);
+            if (!canCaptureKing(board, other))
+                nodes += perftReference(board, other, depth - 1);
+            board.undoMove(m);
+        }
+        return nodes;
+    }
+
+    //lists every move of each piece of a color, using Piece.destinations()
+    private static ArrayList<Move> referenceMoves(Board board, Color color)
+    {
+        ArrayList<Move> moves = new ArrayList<Move>();
+        for (Location loc : board.getOccupiedLocations())
+        {
+            Piece p = board.get(loc);
+            if (p.getColor().equals(color))
+                for (Location d : p.destinations())
+                    moves.add(new Move(p, d));
+        }
+        return moves;
+    }
+
+    //returns true if a piece of a color could move onto a king
+    private static boolean canCaptureKing(Board board, Color color)
+    {
+        for (Location loc : board.getOccupiedLocations())
+        {
+            Piece p = board.get(loc);
+            if (p.getColor().equals(color))
+                for (Location d : p.destinations())
+                    if (board.get(d) instanceof King)
+                        return true;
+        }
+        return false;
+    }
+
+    /**
+     * Prints the leaf count below each root move, and the total
+     * @param board the board
+     * @param side the side to move, WHITE or BLACK
+     * @param depth the number of plies to play, at least 1
+     * @return the total leaf count
+     */
+    public static long divide(Board board, int side, int depth)
+    {
+        int[] moves = new int[256];
+        int count = board.generateMoves(side, moves, 0);
+        long total = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++)
+        {
+            board.makeMove(moves[i]);
+            long nodes = perft(board, 1 - side, depth - 1);
+            board.unmakeMove(moves[i]);
+            System.out.println(Move.name(moves[i]) + ": " + nodes);
+            total += nodes;
+        }
+        long time = System.nanoTime() - start;
+        System.out.println("total: " + total + " (" + nps(total, time) + " nodes/s)");
+        return total;
+    }
+
+    /**
+     * Runs perft on every position of the suite at every depth with a known count, printing
+     * the counts and speed
+     * @param reference true to also count with perftReference (only up to depth 3)
+     * @return true if every count matched
+     */
+    public static boolean runSuite(boolean reference)
+    {
+        boolean passed = true;
+        System.out.println("magic tables: " + Magic.getTableSize() + " attack sets built in "
+                           + Magic.getInitNanos() / 1000000 + " ms");
+        for (int p = 0; p < SUITE.length; p++)
+        {
+            System.out.println(SUITE[p]);
+            for (int depth = 1; depth <= COUNTS[p].length; depth++)
+            {
+                Board board = new Board();
+                int side = board.setFen(SUITE[p]);
+                long start = System.nanoTime();
+                long nodes = perft(board, side, depth);
+                long time = System.nanoTime() - start;
+                boolean ok = nodes == COUNTS[p][depth - 1];
+                String line = "  depth " + depth + ": " + nodes + " (expected "
+                              + COUNTS[p][depth - 1] + ", " + nps(nodes, time) + " nodes/s)";
+                if (reference && depth <= 3)
+                {
+                    Color color = side == Board.WHITE ? Color.WHITE : Color.BLACK;
+                    long refNodes = perftReference(board, color, depth);
+                    ok = ok && refNodes == nodes;
+                    line += " reference " + refNodes;
+                }
+                System.out.println(line + (ok ? "" : "  FAILED"));
+                passed = passed && ok;
+            }
+        }
+        return passed;
+    }
+
+    //returns the nodes per second of a count, given the time taken in nanoseconds
+    private static long nps(long nodes, long nanos)
+    {
+        return nanos == 0 ? 0 : nodes * 1000000000L / nanos;
+    }
+
+    /**
+     * Runs the suite, or divides one position
+     * @param args see the class comment
+     */
+    public static void main(String[] args)
+    {
+        if (args.length == 0 || args[0].equals("-reference"))
+        {
+            boolean passed = runSuite(args.length > 0);
+            System.out.println(passed ? "all counts match" : "some counts do not match");
+            if (!passed)
+                System.exit(1);
+            return;
+        }
+        int depth = Integer.parseInt(args[0]);
+        String fen = START;
+        if (args.length > 1)
+            fen = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
+        Board board = new Board();
+        int side = board.setFen(fen);
+        divide(board, side, depth);
+    }
+}
@@ -9,6 +9,17 @@ import java.util.*;
  */
 public abstract class Piece
 {
+	//piece type codes, used by the board to index its bitboards
+	public static final int PAWN = 0;
+	public static final int KNIGHT = 1;
+	public static final int BISHOP = 2;
+	public static final int ROOK = 3;
+	public static final int QUEEN = 4;
+	public static final int KING = 5;
+
+	//the value of each piece type, indexed by type code
+	public static final int[] VALUES = {1, 3, 5, 5, 9, 1000};
+
 	//the board this piece is on
 	private Board board;
 
@@ -37,6 +48,34 @@ public abstract class Piece
 		value = val;
 	}
 
+    /**
+     * Creates a new piece of a type
+     * @param type the piece type code
+     * @param col the color of the piece
+     * @param fileName the file used to display the piece
+     * @return a new Pawn, Knight, Bishop, Rook, Queen, or King, not yet on a board
+     */
+    public static Piece create(int type, Color col, String fileName)
+    {
+        switch (type)
+        {
+            case PAWN:
+                return new Pawn(col, fileName);
+            case KNIGHT:
+                return new Knight(col, fileName);
+            case BISHOP:
+                return new Bishop(col, fileName);
+            case ROOK:
+                return new Rook(col, fileName);
+            case QUEEN:
+                return new Queen(col, fileName);
+            case KING:
+                return new King(col, fileName);
+            default:
+                throw new IllegalArgumentException("Unknown piece type " + type);
+        }
+    }
+
 	//returns the board this piece is on
 	public Board getBoard()
 	{
@@ -146,6 +185,12 @@ public abstract class Piece
         return board.isValid(dest) && (board.get(dest)==null || board.get(dest).getColor()!=color);
     }
 
+    /**
+     * Returns the type code of this piece (one of PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING)
+     * @return the type code
+     */
+    public abstract int getType();
+
     /**
      * Lists the locations this piece can move to
      * @return an ArrayList<Location> of valid locations this piece can move to
@@ -153,31 +198,39 @@ public abstract class Piece
     public abstract ArrayList<Location> destinations();
 
     /**
-     * Checks all locations in a direction until it hits a piece or a wall and adds them to a list
-     * @param dests the list to add to
-     * @param direction the direction to check in (0 is North, 180 is South, etc)
+     * Lists the locations a sliding piece can move to: the squares it attacks, which run up to
+     * and include the first piece on each ray, less those holding a piece of its own color
+     * @param attacks the bitboard of attacked squares, from Board.rookAttacks or
+     *        Board.bishopAttacks
+     * @return an ArrayList of valid locations
      */
-    public void sweep(ArrayList<Location> dests, int direction)
+    public ArrayList<Location> sweep(long attacks)
     {
-        int[] directions =  {0, 45, 90, 135, 180, 225, 270, 315};
-        int[] xArr = {0, -1, -1, -1, 0, 1, 1, 1};
-        int[] yArr = {-1, -1, 0, 1, 1, 1, 0, -1};
-        int x = 0;
-        int y = 0;
-        for(int i=0; i<directions.length;i++)
-            if(directions[i] == direction)
-            {
-                x=xArr[i];
-                y=yArr[i];
-            }  
-        Location check = new Location(location.getRow()+y, location.getCol()+x);
-        while(isValidDestination(check))
+        ArrayList<Location> dests = new ArrayList<Location>();
+        long b = attacks & ~board.getOccupancy(Board.side(color));
+        while(b != 0)
         {
-            dests.add(check);
-            if(board.get(check)!=null && board.get(check).getColor()!=color)
-                check = new Location(1000, 1000); //ends loop on captured piece
-            else    
-                check = new Location(check.getRow()+y, check.getCol()+x);
+            dests.add(Board.location(Long.numberOfTrailingZeros(b)));
+            b &= b - 1;
         }
+        return dests;
+    }
+
+    /**
+     * Returns the square number of this piece's location (row * 8 + col)
+     * @return the square
+     */
+    public int getSquare()
+    {
+        return location.getRow() * 8 + location.getCol();
+    }
+
+    /**
+     * Returns the squares holding a piece on this piece's board
+     * @return the bitboard of both sides' pieces
+     */
+    public long getOccupied()
+    {
+        return board.getOccupancy(Board.WHITE) | board.getOccupancy(Board.BLACK);
     }
 }
\ No newline at end of file
@@ -0,0 +1,241 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * PolyglotBook class looks up opening moves in a Polyglot .bin book. The book is a file of 16 byte
+ * big-endian entries (position key, move, weight, learn) sorted by key; it is memory-mapped and
+ * searched in place, so none of it is read onto the heap. A position's key is built from the 781
+ * Random64 numbers of the Polyglot format, which are read from a separate text file (one number
+ * per line, in hex with or without 0x, in the order of the format description).
+ * This board has no castling or en passant, so castling rights are assumed while a king and rook
+ * stand on their starting squares, and positions with an en passant capture available will not
+ * match their book entries. Castling and promotion moves other than to a queen are skipped.
+ * @author Harrison Chen
+ * @version 5/2/23
+ */
+public class PolyglotBook
+{
+    //bytes per entry: an 8 byte key, 2 byte move, 2 byte weight, and 4 byte learn value
+    private static final int ENTRY_BYTES = 16;
+
+    //offsets of the castling, en passant, and white to move numbers in the Random64 array
+    private static final int CASTLE = 768;
+    private static final int EN_PASSANT = 772;
+    private static final int TURN = 780;
+
+    //the entries of the book, mapped from the file
+    private MappedByteBuffer entries;
+    private int count;
+
+    //the Random64 numbers of the Polyglot format
+    private long[] random64;
+
+    //picks among the moves of a position in proportion to their weights
+    private Random random = new Random();
+
+    /**
+     * Opens a book
+     * @param bookFile the .bin book
+     * @param randomFile the text file of the 781 Random64 numbers
+     * @throws IOException if either file cannot be read, or the book is larger than 2GB
+     * @throws IllegalArgumentException if the random file does not hold 781 numbers
+     */
+    public PolyglotBook(String bookFile, String randomFile) throws IOException
+    {
+        random64 = readRandom64(randomFile);
+        try (FileChannel channel = FileChannel.open(Paths.get(bookFile), StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(bookFile + " is larger than 2GB");
+            entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        entries.order(ByteOrder.BIG_ENDIAN);
+        count = entries.capacity() / ENTRY_BYTES;
+    }
+
+    /**
+     * Reads the Random64 numbers of the Polyglot format
+     * @param file the text file, one number in hex per line
+     * @return the 781 numbers
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file does not hold 781 numbers
+     */
+    public static long[] readRandom64(String file) throws IOException
+    {
+        long[] numbers = new long[781];
+        int n = 0;
+        for (String line : Files.readAllLines(Paths.get(file)))
+        {
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+            if (line.startsWith("0x") || line.startsWith("0X"))
+                line = line.substring(2);
+            if (n == numbers.length)
+                throw new IllegalArgumentException(file + " holds more than 781 numbers");
+            numbers[n++] = Long.parseUnsignedLong(line, 16);
+        }
+        if (n < numbers.length)
+            throw new IllegalArgumentException(file + " holds only " + n + " numbers");
+        return numbers;
+    }
+
+    /**
+     * Sets the seed of the weighted move choice, so the same moves are picked every run
+     * @param seed the seed
+     */
+    public void setSeed(long seed)
+    {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Returns the number of entries in the book
+     * @return the entry count
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the Polyglot key of a position
+     * @param board the board
+     * @param sideToMove Board.WHITE or Board.BLACK
+     * @return the key
+     */
+    public long key(Board board, int sideToMove)
+    {
+        long key = 0;
+        for (int side = Board.WHITE; side <= Board.BLACK; side++)
+            for (int type = Piece.PAWN; type <= Piece.KING; type++)
+            {
+                //kinds alternate black and white: black pawn, white pawn, black knight, ...
+                int kind = 2 * type + (side == Board.WHITE ? 1 : 0);
+                long b = board.getPieces(side, type);
+                while (b != 0)
+                {
+                    int sq = Long.numberOfTrailingZeros(b);
+                    b &= b - 1;
+                    key ^= random64[64 * kind + 8 * (7 - sq / 8) + sq % 8];
+                }
+            }
+        if (castle(board, Board.WHITE, 60, 63))
+            key ^= random64[CASTLE];
+        if (castle(board, Board.WHITE, 60, 56))
+            key ^= random64[CASTLE + 1];
+        if (castle(board, Board.BLACK, 4, 7))
+            key ^= random64[CASTLE + 2];
+        if (castle(board, Board.BLACK, 4, 0))
+            key ^= random64[CASTLE + 3];
+        if (sideToMove == Board.WHITE)
+            key ^= random64[TURN];
+        return key;
+    }
+
+    //returns true if a side's king and a rook are on their starting squares
+    private static boolean castle(Board board, int side, int king, int rook)
+    {
+        return (board.getPieces(side, Piece.KING) & 1L << king) != 0
+               && (board.getPieces(side, Piece.ROOK) & 1L << rook) != 0;
+    }
+
+    /**
+     * Returns the index of the first entry with a key at least as large as a key
+     * @param key the key, compared unsigned like the book's sort order
+     * @return the index, count if every key is smaller
+     */
+    private int lowerBound(long key)
+    {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(entries.getLong(mid * ENTRY_BYTES), key) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the legal book moves of a position
+     * @param board the board
+     * @param sideToMove Board.WHITE or Board.BLACK
+     * @param weights set to the weight of each move returned, may be null
+     * @return the packed moves, in book order
+     */
+    public int[] moves(Board board, int sideToMove, int[] weights)
+    {
+        long key = key(board, sideToMove);
+        int[] legal = new int[256];
+        int legalCount = board.generateMoves(sideToMove, legal, 0);
+        int[] found = new int[16];
+        int n = 0;
+        for (int i = lowerBound(key); i < count && entries.getLong(i * ENTRY_BYTES) == key; i++)
+        {
+            int m = move(entries.getShort(i * ENTRY_BYTES + 8) & 0xffff, legal, legalCount);
+            if (m == Move.NONE)
+                continue;
+            if (n == found.length)
+                found = Arrays.copyOf(found, 2 * n);
+            if (weights != null && n < weights.length)
+                weights[n] = entries.getShort(i * ENTRY_BYTES + 10) & 0xffff;
+            found[n++] = m;
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    /**
+     * Picks a book move for a position, in proportion to the weights of the book's moves
+     * @param board the board
+     * @param sideToMove Board.WHITE or Board.BLACK
+     * @return the packed move, or Move.NONE if the position is not in the book
+     */
+    public int pick(Board board, int sideToMove)
+    {
+        int[] weights = new int[256];
+        int[] moves = moves(board, sideToMove, weights);
+        int total = 0;
+        for (int i = 0; i < moves.length; i++)
+            total += weights[i];
+        if (moves.length == 0)
+            return Move.NONE;
+        if (total == 0)
+            return moves[0];
+        int r = random.nextInt(total);
+        for (int i = 0; i < moves.length; i++)
+        {
+            r -= weights[i];
+            if (r < 0)
+                return moves[i];
+        }
+        return moves[moves.length - 1];
+    }
+
+    /**
+     * Finds the legal move matching a Polyglot move
+     * @param move the Polyglot move: to file in bits 0-2, to rank in 3-5, from file in 6-8, from
+     *        rank in 9-11, promotion piece in 12-14
+     * @param legal the packed legal moves of the position
+     * @param legalCount the number of legal moves
+     * @return the packed move, or Move.NONE if it is not legal here (or is an under-promotion)
+     */
+    private static int move(int move, int[] legal, int legalCount)
+    {
+        int to = 8 * (7 - (move >>> 3 & 7)) + (move & 7);
+        int from = 8 * (7 - (move >>> 9 & 7)) + (move >>> 6 & 7);
+        int promotion = move >>> 12 & 7;
+        if (promotion != 0 && promotion != Piece.QUEEN)
+            return Move.NONE;
+        for (int i = 0; i < legalCount; i++)
+            if (Move.from(legal[i]) == from && Move.to(legal[i]) == to)
+                return legal[i];
+        return Move.NONE;
+    }
+}
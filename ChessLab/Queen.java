@@ -16,7 +16,16 @@ public class Queen extends Piece
      */
     public Queen(Color col, String fileName)
     {
-        super(col, fileName, 9);
+        super(col, fileName, VALUES[QUEEN]);
+    }
+
+    /**
+     * Returns the type code of this piece
+     * @return Piece.QUEEN
+     */
+    public int getType()
+    {
+        return QUEEN;
     }
 
     /**
@@ -25,11 +34,8 @@ public class Queen extends Piece
      */
     public ArrayList<Location> destinations()
     {
-        ArrayList<Location> validDests = new ArrayList<Location>();
-        int[] directions = {Location.NORTH, Location.SOUTH, Location.EAST, Location.WEST,
-                            Location.NORTHEAST, Location.NORTHWEST, Location.SOUTHEAST, Location.SOUTHWEST};
-        for(int d : directions)
-            sweep(validDests, d);
-        return validDests;
+        long occupied = getOccupied();
+        return sweep(Board.rookAttacks(getSquare(), occupied)
+                     | Board.bishopAttacks(getSquare(), occupied));
     }
 }
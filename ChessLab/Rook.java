@@ -16,7 +16,16 @@ public class Rook extends Piece
      */
     public Rook(Color col, String fileName)
     {
-        super(col, fileName, 5);
+        super(col, fileName, VALUES[ROOK]);
+    }
+
+    /**
+     * Returns the type code of this piece
+     * @return Piece.ROOK
+     */
+    public int getType()
+    {
+        return ROOK;
     }
 
     /**
@@ -25,10 +34,6 @@ public class Rook extends Piece
      */
     public ArrayList<Location> destinations()
     {
-        ArrayList<Location> validDests = new ArrayList<Location>();
-        int[] directions = {Location.NORTH, Location.SOUTH, Location.EAST, Location.WEST};
-        for(int d : directions)
-            sweep(validDests, d);
-        return validDests;
+        return sweep(Board.rookAttacks(getSquare(), getOccupied()));
     }
 }
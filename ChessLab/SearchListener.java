@@ -0,0 +1,18 @@
+/**
+ * SearchListener interface is told about each depth a SmartPlayer finishes searching, so a front
+ * end can show the progress of the search
+ * @author Harrison Chen
+ * @version 4/30/23
+ */
+public interface SearchListener
+{
+    /**
+     * Called after each completed depth of a search, on the searching thread
+     * @param depth the number of plies searched
+     * @param score the score of the best move, from the searching player's perspective
+     * @param nodes the number of nodes visited so far by the searching thread
+     * @param nanos the time since the search started, in nanoseconds
+     * @param pv the packed moves of the expected line, starting with the best move
+     */
+    void depthCompleted(int depth, int score, long nodes, long nanos, int[] pv);
+}
@@ -0,0 +1,222 @@
+import java.lang.management.ManagementFactory;
+import javax.management.*;
+
+/**
+ * SearchMetrics class collects the statistics of a SmartPlayer's searches and publishes them as a
+ * JMX MBean. A player only records its searches while it has a SearchMetrics (see
+ * SmartPlayer.setMetrics), so without one the search pays nothing beyond its own counters.
+ * Registered metrics appear in jconsole under ChessLab, SearchMetrics, and the given name.
+ * @author Harrison Chen
+ * @version 5/6/23
+ */
+public class SearchMetrics implements SearchMetricsMBean
+{
+    //the domain of the MBean names
+    public static final String DOMAIN = "ChessLab";
+
+    //the name this is registered under, or null if it is not registered
+    private ObjectName objectName;
+
+    //the last search
+    private int lastDepth;
+    private int lastScore;
+    private long lastNodes;
+    private long lastQuiescenceNodes;
+    private long lastCutoffs;
+    private long lastTableProbes;
+    private long lastTableHits;
+    private long lastNanos;
+
+    //every search since the last reset
+    private long searches;
+    private long totalNodes;
+    private long totalNanos;
+    private long totalTableProbes;
+    private long totalTableHits;
+
+    /**
+     * Creates metrics and registers them with the platform MBean server
+     * @param name the name of the metrics, such as the player's name
+     * @return the registered metrics
+     * @throws IllegalArgumentException if the name cannot be part of an MBean name
+     * @throws IllegalStateException if metrics are already registered under the name
+     */
+    public static SearchMetrics register(String name)
+    {
+        SearchMetrics metrics = new SearchMetrics();
+        try
+        {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=SearchMetrics,name="
+                                                   + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            metrics.objectName = objectName;
+        }
+        catch (MalformedObjectNameException e)
+        {
+            throw new IllegalArgumentException("Bad metrics name " + name, e);
+        }
+        catch (InstanceAlreadyExistsException e)
+        {
+            throw new IllegalStateException("Metrics " + name + " are already registered", e);
+        }
+        catch (JMException e)
+        {
+            throw new IllegalStateException("Cannot register metrics " + name, e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if they were registered
+     */
+    public synchronized void unregister()
+    {
+        if (objectName == null)
+            return;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        catch (JMException e)
+        {
+            //already gone
+        }
+        objectName = null;
+    }
+
+    /**
+     * Records a finished search
+     * @param player the player that searched, read through its getters
+     */
+    public synchronized void record(SmartPlayer player)
+    {
+        lastDepth = player.getCompletedDepth();
+        lastScore = player.getBestScore();
+        lastNodes = player.getNodes();
+        lastQuiescenceNodes = player.getQuiescenceNodes();
+        lastCutoffs = player.getCutoffs();
+        lastTableProbes = player.getTableProbes();
+        lastTableHits = player.getTableHits();
+        lastNanos = player.getSearchNanos();
+        searches++;
+        totalNodes += lastNodes;
+        totalNanos += lastNanos;
+        totalTableProbes += lastTableProbes;
+        totalTableHits += lastTableHits;
+    }
+
+    public synchronized long getSearches()
+    {
+        return searches;
+    }
+
+    public synchronized int getLastDepth()
+    {
+        return lastDepth;
+    }
+
+    public synchronized int getLastScore()
+    {
+        return lastScore;
+    }
+
+    public synchronized long getLastNodes()
+    {
+        return lastNodes;
+    }
+
+    public synchronized long getLastQuiescenceNodes()
+    {
+        return lastQuiescenceNodes;
+    }
+
+    public synchronized long getLastCutoffs()
+    {
+        return lastCutoffs;
+    }
+
+    public synchronized long getLastTableProbes()
+    {
+        return lastTableProbes;
+    }
+
+    public synchronized long getLastTableHits()
+    {
+        return lastTableHits;
+    }
+
+    public synchronized long getLastTimeMillis()
+    {
+        return lastNanos / 1000000;
+    }
+
+    public synchronized long getLastNodesPerSecond()
+    {
+        return nodesPerSecond(lastNodes, lastNanos);
+    }
+
+    public synchronized double getLastBranchingFactor()
+    {
+        return branchingFactor(lastNodes, lastDepth);
+    }
+
+    public synchronized long getTotalNodes()
+    {
+        return totalNodes;
+    }
+
+    public synchronized long getTotalTimeMillis()
+    {
+        return totalNanos / 1000000;
+    }
+
+    public synchronized long getAverageNodesPerSecond()
+    {
+        return nodesPerSecond(totalNodes, totalNanos);
+    }
+
+    public synchronized double getTableHitRate()
+    {
+        return totalTableProbes == 0 ? 0 : (double) totalTableHits / totalTableProbes;
+    }
+
+    public synchronized void reset()
+    {
+        lastDepth = 0;
+        lastScore = 0;
+        lastNodes = 0;
+        lastQuiescenceNodes = 0;
+        lastCutoffs = 0;
+        lastTableProbes = 0;
+        lastTableHits = 0;
+        lastNanos = 0;
+        searches = 0;
+        totalNodes = 0;
+        totalNanos = 0;
+        totalTableProbes = 0;
+        totalTableHits = 0;
+    }
+
+    /**
+     * Returns a search speed
+     * @param nodes the nodes visited
+     * @param nanos the time taken in nanoseconds
+     * @return nodes per second, 0 if no time was taken
+     */
+    public static long nodesPerSecond(long nodes, long nanos)
+    {
+        return nanos <= 0 ? 0 : (long) (nodes * 1e9 / nanos);
+    }
+
+    /**
+     * Returns the effective branching factor of a search: the number of moves per node that a
+     * uniform tree of the same depth and node count would have
+     * @param nodes the nodes visited
+     * @param depth the depth searched in plies
+     * @return nodes to the power 1 / depth, 0 if the depth is 0
+     */
+    public static double branchingFactor(long nodes, int depth)
+    {
+        return depth <= 0 || nodes <= 0 ? 0 : Math.pow(nodes, 1.0 / depth);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * SearchMetricsMBean interface is the management interface of SearchMetrics, read by JMX clients
+ * such as jconsole. The Last attributes describe the most recent search, the Total attributes
+ * every search since the last reset.
+ * @author Harrison Chen
+ * @version 5/6/23
+ */
+public interface SearchMetricsMBean
+{
+    /**
+     * Returns the number of searches recorded since the last reset
+     * @return the search count
+     */
+    long getSearches();
+
+    /**
+     * Returns the deepest iteration completed by the last search
+     * @return the depth in plies, 0 if no iteration completed
+     */
+    int getLastDepth();
+
+    /**
+     * Returns the score of the move chosen by the last search
+     * @return the score from the searching player's perspective
+     */
+    int getLastScore();
+
+    /**
+     * Returns the nodes visited by the last search
+     * @return the node count, quiescence nodes included
+     */
+    long getLastNodes();
+
+    /**
+     * Returns the quiescence nodes visited by the last search
+     * @return the quiescence node count
+     */
+    long getLastQuiescenceNodes();
+
+    /**
+     * Returns the nodes of the last search cut off by one of their moves
+     * @return the cutoff count
+     */
+    long getLastCutoffs();
+
+    /**
+     * Returns the transposition table lookups of the last search
+     * @return the probe count
+     */
+    long getLastTableProbes();
+
+    /**
+     * Returns the transposition table lookups of the last search that found the position
+     * @return the hit count
+     */
+    long getLastTableHits();
+
+    /**
+     * Returns the time the last search took
+     * @return the time in milliseconds
+     */
+    long getLastTimeMillis();
+
+    /**
+     * Returns the speed of the last search
+     * @return nodes per second
+     */
+    long getLastNodesPerSecond();
+
+    /**
+     * Returns the effective branching factor of the last search
+     * @return the number whose depth-th power is the node count
+     */
+    double getLastBranchingFactor();
+
+    /**
+     * Returns the nodes visited by every search since the last reset
+     * @return the node count
+     */
+    long getTotalNodes();
+
+    /**
+     * Returns the time taken by every search since the last reset
+     * @return the time in milliseconds
+     */
+    long getTotalTimeMillis();
+
+    /**
+     * Returns the average speed of every search since the last reset
+     * @return nodes per second
+     */
+    long getAverageNodesPerSecond();
+
+    /**
+     * Returns the fraction of transposition table lookups that found the position, over every
+     * search since the last reset
+     * @return hits / probes, or 0 if there were no probes
+     */
+    double getTableHitRate();
+
+    /**
+     * Forgets every search recorded so far
+     */
+    void reset();
+}
@@ -0,0 +1,1081 @@
+import java.util.Arrays;
+
+/**
+ * Searcher class holds the state of one search of a board: the move buffers, transposition table,
+ * move orderer, node counters, and deadline. Positions are scored from the perspective of one
+ * side, which maximizes while the other side minimizes. Each searcher plays moves on its own
+ * board, so parallel searches each need their own searcher and board.
+ * @author Harrison Chen
+ * @version 4/24/23
+ */
+public class Searcher
+{
+    //the deepest search, in plies from the root
+    public static final int MAX_DEPTH = 64;
+
+    //the score of a win with the opponent left without legal moves at the root; wins further
+    //away, found by the search or in the endgame tables, score one less per ply, and losses are
+    //the negated scores
+    public static final int MATE = Integer.MAX_VALUE - 1;
+
+    //scores further from 0 than this are wins or losses with a known distance to mate
+    public static final int MATE_BOUND = MATE - 1000;
+
+    //how many plies of captures the quiescence search may add below the main search
+    private static final int MAX_QUIESCENCE = 16;
+
+    //plies the null move search is reduced by, besides the move itself
+    private static final int NULL_REDUCTION = 2;
+
+    //quiet moves searched after this many moves of a node are reduced by one ply
+    private static final int LATE_MOVES = 3;
+
+    //a capture is skipped in quiescence if winning its victim plus this margin cannot raise
+    //the score to the bound
+    private static final int DELTA_MARGIN = 200;
+
+    //the board searched, and the side index of the maximizing player
+    private Board board;
+    private int side;
+
+    //whether to prune with alpha-beta instead of expanding every node
+    private boolean alphaBeta = true;
+
+    //whether the alpha-beta search resolves captures at its horizon before scoring
+    private boolean quiescence = true;
+
+    //whether the alpha-beta search tries passing before searching a node's moves, and reduces
+    //quiet moves ordered late
+    private boolean nullMovePruning = true;
+    private boolean lateMoveReductions = true;
+
+    //whether captures that lose material in the exchange on their square are ordered last,
+    //and skipped by the quiescence search
+    private boolean capturePruning = true;
+
+    //set while searching the reply to a null move, so two are not made in a row
+    private boolean afterNullMove;
+
+    //results of earlier searches, consulted by the alpha-beta search (null to disable)
+    private TranspositionTable table;
+
+    //set by probe when the stored result can be returned without searching
+    private boolean cutoff;
+
+    //endgame tables probed at every node with few enough pieces (null to disable)
+    private Tablebase tablebase;
+
+    //set by probeTablebase when the position was found in the tables
+    private boolean tablebaseHit;
+
+    //sorts the moves of each node of the alpha-beta search (null to search in board order)
+    private MoveOrderer orderer;
+
+    //number of moves (null moves included) played from the root to the current node; with
+    //reductions this can be less than the root depth minus the depth left
+    private int ply;
+
+    //whether moves after a node's first are searched with a null window, and searched again
+    //with the full window only if they beat the bound
+    private boolean principalVariationSearch = true;
+
+    //the best line found from each ply, and its length; pvTable[0] is the line of the root
+    private int[][] pvTable = new int[MAX_DEPTH + MAX_QUIESCENCE + 1][MAX_DEPTH + 1];
+    private int[] pvLength = new int[MAX_DEPTH + MAX_QUIESCENCE + 1];
+
+    //number of nodes visited, and how many of them were quiescence nodes
+    private long nodes;
+    private long qnodes;
+
+    //number of nodes scored from the endgame tables
+    private long tablebaseHits;
+
+    //number of nodes of the main search cut off by one of their moves, and of transposition
+    //table lookups and how many of them found the position
+    private long cutoffs;
+    private long tableProbes;
+    private long tableHits;
+
+    //number of null move searches and how many of them cut off, and number of reduced moves
+    //and how many of them were searched again at full depth
+    private long nullMoves;
+    private long nullMoveCutoffs;
+    private long reductions;
+    private long reSearches;
+
+    //number of captures the quiescence search skipped because they lose material
+    private long prunedCaptures;
+
+    //System.nanoTime() at which the search is abandoned, 0 for no limit
+    private long deadline;
+
+    //set once the deadline has passed or the search was aborted, unwinding the search
+    private boolean stopped;
+
+    //set by another thread to stop the search at its next clock check
+    private volatile boolean aborted;
+
+    //the score of the best move found by the last root search
+    private int bestScore;
+
+    //a preallocated buffer of packed moves for each ply, so the search does not allocate
+    private int[][] moveBuffers = new int[MAX_DEPTH + MAX_QUIESCENCE][256];
+
+    /**
+     * Constructs a searcher of a board
+     * @param b the board to play moves on
+     * @param maximizer the side (Board.WHITE or Board.BLACK) whose score is maximized
+     * @param t the transposition table, or null
+     * @param o the move orderer, or null
+     */
+    public Searcher(Board b, int maximizer, TranspositionTable t, MoveOrderer o)
+    {
+        board = b;
+        side = maximizer;
+        table = t;
+        orderer = o;
+    }
+
+    /**
+     * Chooses between alpha-beta and full minimax search
+     * @param on true to use alpha-beta pruning, false to expand every node
+     */
+    public void setAlphaBeta(boolean on)
+    {
+        alphaBeta = on;
+    }
+
+    /**
+     * Turns the quiescence search of the alpha-beta search on or off
+     * @param on true to search captures at the horizon
+     */
+    public void setQuiescence(boolean on)
+    {
+        quiescence = on;
+    }
+
+    /**
+     * Turns principal variation search on or off. Each node's first move is searched with the
+     * full window and the rest with a null window, which only proves that they are no better;
+     * a move that is better after all is searched again with the full window.
+     * @param on true to use principal variation search
+     */
+    public void setPrincipalVariationSearch(boolean on)
+    {
+        principalVariationSearch = on;
+    }
+
+    /**
+     * Turns null move pruning on or off. When the side to move has a piece besides pawns and is
+     * not in check, it first passes and searches the reply to a reduced depth with a null
+     * window; if passing already refutes the opponent's line, the node is cut off. King and
+     * pawn positions are skipped, since there passing is often the best move (zugzwang).
+     * @param on true to prune with null moves
+     */
+    public void setNullMovePruning(boolean on)
+    {
+        nullMovePruning = on;
+    }
+
+    /**
+     * Turns late move reductions on or off. Quiet moves ordered after the first few of a node
+     * (not captures, promotions, killers, or checks, and not out of check) are searched one ply
+     * shallower with a null window, and searched again at full depth only if they beat the
+     * bound.
+     * @param on true to reduce late moves
+     */
+    public void setLateMoveReductions(boolean on)
+    {
+        lateMoveReductions = on;
+    }
+
+    /**
+     * Turns capture pruning on or off. Captures whose exchange on the captured square loses
+     * material (see Board.see) are ordered after the quiet moves, and the quiescence search
+     * skips them, since the capturing side could always stand pat instead.
+     * @param on true to prune losing captures
+     */
+    public void setCapturePruning(boolean on)
+    {
+        capturePruning = on;
+    }
+
+    /**
+     * Sets the endgame tables probed at nodes with few enough pieces. A position found in the
+     * tables is scored by its distance to mate instead of being searched.
+     * @param tb the tablebase, or null to search every position
+     */
+    public void setTablebase(Tablebase tb)
+    {
+        tablebase = tb;
+    }
+
+    /**
+     * Sets the System.nanoTime() at which the search is abandoned
+     * @param time the deadline, or 0 for no limit
+     */
+    public void setDeadline(long time)
+    {
+        deadline = time;
+    }
+
+    /**
+     * Prepares for a new search: clears the counters and the stopped flag
+     */
+    public void reset()
+    {
+        nodes = 0;
+        qnodes = 0;
+        tablebaseHits = 0;
+        cutoffs = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        nullMoves = 0;
+        nullMoveCutoffs = 0;
+        reductions = 0;
+        reSearches = 0;
+        prunedCaptures = 0;
+        stopped = false;
+    }
+
+    /**
+     * Stops the search from another thread. The search notices within 1024 nodes, and every
+     * later search of this searcher stops as well.
+     */
+    public void abort()
+    {
+        aborted = true;
+    }
+
+    /**
+     * Returns whether the last search was abandoned at the deadline
+     * @return true if the search stopped early
+     */
+    public boolean isStopped()
+    {
+        return stopped;
+    }
+
+    /**
+     * Returns the number of nodes visited since the last reset
+     * @return the node count
+     */
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of quiescence nodes visited since the last reset, which are included
+     * in getNodes
+     * @return the quiescence node count
+     */
+    public long getQuiescenceNodes()
+    {
+        return qnodes;
+    }
+
+    /**
+     * Returns the number of nodes scored from the endgame tables since the last reset
+     * @return the tablebase hit count
+     */
+    public long getTablebaseHits()
+    {
+        return tablebaseHits;
+    }
+
+    /**
+     * Returns the number of nodes of the main search cut off by one of their moves since the
+     * last reset
+     * @return the cutoff count
+     */
+    public long getCutoffs()
+    {
+        return cutoffs;
+    }
+
+    /**
+     * Returns the number of transposition table lookups since the last reset
+     * @return the probe count
+     */
+    public long getTableProbes()
+    {
+        return tableProbes;
+    }
+
+    /**
+     * Returns the number of transposition table lookups that found the position since the last
+     * reset
+     * @return the hit count
+     */
+    public long getTableHits()
+    {
+        return tableHits;
+    }
+
+    /**
+     * Returns the number of null move searches since the last reset
+     * @return the null move count
+     */
+    public long getNullMoves()
+    {
+        return nullMoves;
+    }
+
+    /**
+     * Returns the number of null move searches that cut their node off since the last reset
+     * @return the null move cutoff count
+     */
+    public long getNullMoveCutoffs()
+    {
+        return nullMoveCutoffs;
+    }
+
+    /**
+     * Returns the number of moves searched at a reduced depth since the last reset
+     * @return the reduction count
+     */
+    public long getReductions()
+    {
+        return reductions;
+    }
+
+    /**
+     * Returns the number of reduced moves searched again at full depth since the last reset
+     * @return the re-search count
+     */
+    public long getReSearches()
+    {
+        return reSearches;
+    }
+
+    /**
+     * Returns the number of losing captures the quiescence search skipped since the last reset
+     * @return the pruned capture count
+     */
+    public long getPrunedCaptures()
+    {
+        return prunedCaptures;
+    }
+
+    /**
+     * Returns the best line found by the last root search or scoreMove: the move and the
+     * replies expected to follow, as far as the search saw them. The line ends early where a
+     * position was scored from the transposition table or the endgame tables.
+     * @return the packed moves of the line
+     */
+    public int[] getPrincipalVariation()
+    {
+        return Arrays.copyOf(pvTable[0], pvLength[0]);
+    }
+
+    /**
+     * Returns the score of the best move found by the last root search
+     * @return the score from the maximizing side's perspective
+     */
+    public int getBestScore()
+    {
+        return bestScore;
+    }
+
+    /**
+     * Returns the score of this board state from the perspective of the maximizing side
+     * @return the evaluation of the board, in hundredths of a pawn
+     */
+    private int score()
+    {
+        return board.evaluate(side);
+    }
+
+    /**
+     * Returns the value of the worst repsonse an opponent could make at the current boardstate
+     * @return the minimum scored move that the opponent can make in this boardstate
+     */
+    private int valueOfWorstResponse(int deep)
+    {
+        pvLength[ply] = 0;
+        if(outOfTime())
+            return 0;
+        int tbScore = probeTablebase(1 - side);
+        if(tablebaseHit)
+            return tbScore;
+        if(deep == 0)
+            return score();
+        int[] moves = moveBuffers[ply];
+        int count = board.generateMoves(1 - side, moves, 0);
+        //an opponent without legal moves has lost, in check or not
+        if(count == 0)
+            return MATE - ply;
+        int minScore = Integer.MAX_VALUE;
+        for(int i=0; i<count; i++)
+        {
+            play(moves[i]);
+            int score = valueOfBestMove(deep-1);
+            undo(moves[i]);
+            if(score<minScore)
+            {
+                minScore = score;
+                updatePrincipalVariation(moves[i]);
+            }
+            if(stopped)
+                return 0;
+        }
+        return minScore;
+    }
+
+    /**
+     * Returns the value of the best move the player could make at the current boardstate
+     * @return the maximum scored move that the player can make in this boardstate
+     */
+    private int valueOfBestMove(int deep)
+    {
+        pvLength[ply] = 0;
+        if(outOfTime())
+            return 0;
+        int tbScore = probeTablebase(side);
+        if(tablebaseHit)
+            return tbScore;
+        if(deep == 0)
+            return score();
+        int[] moves = moveBuffers[ply];
+        int count = board.generateMoves(side, moves, 0);
+        if(count == 0)
+            return -(MATE - ply);
+        int maxScore = Integer.MIN_VALUE;
+        for(int i=0; i<count; i++)
+        {
+            play(moves[i]);
+            int score = valueOfWorstResponse(deep-1);
+            undo(moves[i]);
+            if(score>maxScore)
+            {
+                maxScore = score;
+                updatePrincipalVariation(moves[i]);
+            }
+            if(stopped)
+                return 0;
+        }
+        return maxScore;
+    }
+
+    /**
+     * Returns the value of the worst response an opponent could make at the current boardstate,
+     * stopping early once it is no better for this player than alpha
+     * @param deep the number of plies left to search
+     * @param alpha the score this player is already guaranteed elsewhere
+     * @param beta the score the opponent is already guaranteed elsewhere
+     * @return the minimum scored move the opponent can make, or a value at most alpha if the
+     *         opponent has a response refuting this line
+     */
+    private int valueOfWorstResponse(int deep, int alpha, int beta)
+    {
+        pvLength[ply] = 0;
+        int tbScore = probeTablebase(1 - side);
+        if(tablebaseHit)
+            return tbScore;
+        if(deep == 0 && quiescence)
+            return valueOfWorstCapture(alpha, beta, 0);
+        if(outOfTime())
+            return 0;
+        if(deep == 0)
+            return score();
+        long key = board.getKey(1 - side);
+        long entry = probe(key, deep, alpha, beta);
+        if(cutoff)
+            return fromTable(TranspositionTable.getScore(entry));
+        boolean nullAllowed = !afterNullMove;
+        afterNullMove = false;
+        boolean inCheck = deep > 2 && board.inCheck(1 - side);
+        //null move: if this player still reaches alpha after the opponent passes, it is
+        //already refuted
+        if(nullMovePruning && nullAllowed && deep > NULL_REDUCTION && !inCheck
+                && alpha != Integer.MIN_VALUE && hasPieces(1 - side))
+        {
+            nullMoves++;
+            afterNullMove = true;
+            ply++;
+            int score = valueOfBestMove(deep-1-NULL_REDUCTION, alpha, alpha+1);
+            ply--;
+            afterNullMove = false;
+            if(stopped)
+                return 0;
+            if(score<=alpha)
+            {
+                nullMoveCutoffs++;
+                return alpha;
+            }
+        }
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+        int[] moves = moveBuffers[ply];
+        int count = board.generateMoves(1 - side, moves, 0);
+        if(count == 0)
+            return MATE - ply;
+        sortMoves(moves, count, ply, TranspositionTable.getMove(entry));
+        boolean reduce = lateMoveReductions && deep > 2 && !inCheck;
+        int minScore = Integer.MAX_VALUE;
+        int bestMove = Move.NONE;
+        for(int i=0; i<count; i++)
+        {
+            int m = moves[i];
+            boolean late = reduce && i >= LATE_MOVES && isQuiet(m, ply);
+            play(m);
+            //search a late quiet move one ply shallower, then with a null window, and only
+            //then with the full window, for as long as it keeps beating the bound
+            boolean full = true;
+            int score = 0;
+            if(late && !board.inCheck(side))
+            {
+                reductions++;
+                score = valueOfBestMove(deep-2, beta-1, beta);
+                full = score<beta;
+                if(full)
+                    reSearches++;
+            }
+            if(full && i > 0 && principalVariationSearch && !stopped)
+            {
+                score = valueOfBestMove(deep-1, beta-1, beta);
+                full = score<beta && score>alpha;
+            }
+            if(full && !stopped)
+                score = valueOfBestMove(deep-1, alpha, beta);
+            undo(m);
+            if(stopped)
+                return 0;
+            if(score<minScore)
+            {
+                minScore = score;
+                bestMove = m;
+                if(minScore<=alpha)
+                {
+                    cutoffs++;
+                    if(orderer != null)
+                        orderer.cutoff(m, ply, deep, i);
+                    break;
+                }
+                if(minScore<beta)
+                {
+                    beta = minScore;
+                    updatePrincipalVariation(m);
+                }
+            }
+        }
+        store(key, deep, minScore, alphaOrig, betaOrig, bestMove);
+        return minScore;
+    }
+
+    /**
+     * Returns the value of the best move the player could make at the current boardstate,
+     * stopping early once it is no worse for this player than beta
+     * @param deep the number of plies left to search
+     * @param alpha the score this player is already guaranteed elsewhere
+     * @param beta the score the opponent is already guaranteed elsewhere
+     * @return the maximum scored move the player can make, or a value at least beta if the
+     *         player has a move refuting the opponent's line
+     */
+    private int valueOfBestMove(int deep, int alpha, int beta)
+    {
+        pvLength[ply] = 0;
+        int tbScore = probeTablebase(side);
+        if(tablebaseHit)
+            return tbScore;
+        if(deep == 0 && quiescence)
+            return valueOfBestCapture(alpha, beta, 0);
+        if(outOfTime())
+            return 0;
+        if(deep == 0)
+            return score();
+        long key = board.getKey(side);
+        long entry = probe(key, deep, alpha, beta);
+        if(cutoff)
+            return fromTable(TranspositionTable.getScore(entry));
+        boolean nullAllowed = !afterNullMove;
+        afterNullMove = false;
+        boolean inCheck = deep > 2 && board.inCheck(side);
+        //null move: if the opponent still cannot get below beta after this player passes,
+        //the opponent's line is already refuted
+        if(nullMovePruning && nullAllowed && deep > NULL_REDUCTION && !inCheck
+                && beta != Integer.MAX_VALUE && hasPieces(side))
+        {
+            nullMoves++;
+            afterNullMove = true;
+            ply++;
+            int score = valueOfWorstResponse(deep-1-NULL_REDUCTION, beta-1, beta);
+            ply--;
+            afterNullMove = false;
+            if(stopped)
+                return 0;
+            if(score>=beta)
+            {
+                nullMoveCutoffs++;
+                return beta;
+            }
+        }
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+        int[] moves = moveBuffers[ply];
+        int count = board.generateMoves(side, moves, 0);
+        if(count == 0)
+            return -(MATE - ply);
+        sortMoves(moves, count, ply, TranspositionTable.getMove(entry));
+        boolean reduce = lateMoveReductions && deep > 2 && !inCheck;
+        int maxScore = Integer.MIN_VALUE;
+        int bestMove = Move.NONE;
+        for(int i=0; i<count; i++)
+        {
+            int m = moves[i];
+            boolean late = reduce && i >= LATE_MOVES && isQuiet(m, ply);
+            play(m);
+            //search a late quiet move one ply shallower, then with a null window, and only
+            //then with the full window, for as long as it keeps beating the bound
+            boolean full = true;
+            int score = 0;
+            if(late && !board.inCheck(1 - side))
+            {
+                reductions++;
+                score = valueOfWorstResponse(deep-2, alpha, alpha+1);
+                full = score>alpha;
+                if(full)
+                    reSearches++;
+            }
+            if(full && i > 0 && principalVariationSearch && !stopped)
+            {
+                score = valueOfWorstResponse(deep-1, alpha, alpha+1);
+                full = score>alpha && score<beta;
+            }
+            if(full && !stopped)
+                score = valueOfWorstResponse(deep-1, alpha, beta);
+            undo(m);
+            if(stopped)
+                return 0;
+            if(score>maxScore)
+            {
+                maxScore = score;
+                bestMove = m;
+                if(maxScore>=beta)
+                {
+                    cutoffs++;
+                    if(orderer != null)
+                        orderer.cutoff(m, ply, deep, i);
+                    break;
+                }
+                if(maxScore>alpha)
+                {
+                    alpha = maxScore;
+                    updatePrincipalVariation(m);
+                }
+            }
+        }
+        store(key, deep, maxScore, alphaOrig, betaOrig, bestMove);
+        return maxScore;
+    }
+
+    /**
+     * Returns the value of the best capture the player could make at the current boardstate, or
+     * the score of the boardstate if no capture is better (standing pat)
+     * @param alpha the score this player is already guaranteed elsewhere
+     * @param beta the score the opponent is already guaranteed elsewhere
+     * @param qply the number of capture plies already played below the horizon
+     * @return the maximum of the score and the captures' values, or a value at least beta if
+     *         the player can refute the opponent's line
+     */
+    private int valueOfBestCapture(int alpha, int beta, int qply)
+    {
+        qnodes++;
+        pvLength[ply] = 0;
+        if(outOfTime())
+            return 0;
+        int standPat = score();
+        if(standPat>=beta || qply==MAX_QUIESCENCE)
+            return standPat;
+        if(standPat>alpha)
+            alpha = standPat;
+        int[] moves = moveBuffers[ply];
+        int count = board.generateCaptures(side, moves, 0);
+        if(orderer != null)
+            orderer.order(moves, count, ply, Move.NONE);
+        int maxScore = standPat;
+        for(int i=0; i<count; i++)
+        {
+            int m = moves[i];
+            //delta pruning: even winning the victim for free would not raise alpha
+            if(standPat + 100*Piece.VALUES[Move.victim(m)] + DELTA_MARGIN <= alpha)
+                continue;
+            if(capturePruning && losesMaterial(m))
+                continue;
+            play(m);
+            int score = valueOfWorstCapture(alpha, beta, qply+1);
+            undo(m);
+            if(stopped)
+                return 0;
+            if(score>maxScore)
+            {
+                maxScore = score;
+                if(maxScore>=beta)
+                    return maxScore;
+                if(maxScore>alpha)
+                    alpha = maxScore;
+            }
+        }
+        return maxScore;
+    }
+
+    /**
+     * Returns the value of the worst capture the opponent could make at the current boardstate,
+     * or the score of the boardstate if no capture is worse for this player (standing pat)
+     * @param alpha the score this player is already guaranteed elsewhere
+     * @param beta the score the opponent is already guaranteed elsewhere
+     * @param qply the number of capture plies already played below the horizon
+     * @return the minimum of the score and the captures' values, or a value at most alpha if
+     *         the opponent can refute this line
+     */
+    private int valueOfWorstCapture(int alpha, int beta, int qply)
+    {
+        qnodes++;
+        pvLength[ply] = 0;
+        if(outOfTime())
+            return 0;
+        int standPat = score();
+        if(standPat<=alpha || qply==MAX_QUIESCENCE)
+            return standPat;
+        if(standPat<beta)
+            beta = standPat;
+        int[] moves = moveBuffers[ply];
+        int count = board.generateCaptures(1 - side, moves, 0);
+        if(orderer != null)
+            orderer.order(moves, count, ply, Move.NONE);
+        int minScore = standPat;
+        for(int i=0; i<count; i++)
+        {
+            int m = moves[i];
+            //delta pruning: even losing the victim for free would not lower beta
+            if(standPat - 100*Piece.VALUES[Move.victim(m)] - DELTA_MARGIN >= beta)
+                continue;
+            if(capturePruning && losesMaterial(m))
+                continue;
+            play(m);
+            int score = valueOfBestCapture(alpha, beta, qply+1);
+            undo(m);
+            if(stopped)
+                return 0;
+            if(score<minScore)
+            {
+                minScore = score;
+                if(minScore<=alpha)
+                    return minScore;
+                if(minScore<beta)
+                    beta = minScore;
+            }
+        }
+        return minScore;
+    }
+
+    /**
+     * Returns whether a capture loses material once the exchange on its square is played out,
+     * counting it as pruned if so
+     * @param m the packed capture
+     * @return true if the capture should be skipped
+     */
+    private boolean losesMaterial(int m)
+    {
+        if(Piece.VALUES[Move.type(m)] <= Piece.VALUES[Move.victim(m)] || board.see(m) >= 0)
+            return false;
+        prunedCaptures++;
+        return true;
+    }
+
+    /**
+     * Looks up a position in the transposition table. Sets cutoff if the stored result was
+     * searched deep enough to be returned without searching the position again.
+     * @param key the zobrist key of the position
+     * @param deep the number of plies left to search
+     * @param alpha the score this player is already guaranteed elsewhere
+     * @param beta the score the opponent is already guaranteed elsewhere
+     * @return the packed entry of the position, or 0 if there is no table or the position is not
+     *         stored
+     */
+    private long probe(long key, int deep, int alpha, int beta)
+    {
+        cutoff = false;
+        if(table == null)
+            return 0;
+        long entry = table.probe(key);
+        tableProbes++;
+        if(entry != 0)
+            tableHits++;
+        if(entry != 0 && TranspositionTable.getDepth(entry) >= deep)
+        {
+            int score = fromTable(TranspositionTable.getScore(entry));
+            int bound = TranspositionTable.getBound(entry);
+            cutoff = bound == TranspositionTable.EXACT
+                || (bound == TranspositionTable.LOWER && score >= beta)
+                || (bound == TranspositionTable.UPPER && score <= alpha);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns whether a side has a piece besides its king and pawns, so that passing is
+     * unlikely to be better than every move
+     * @param s Board.WHITE or Board.BLACK
+     * @return true if the side has a knight, bishop, rook, or queen
+     */
+    private boolean hasPieces(int s)
+    {
+        return (board.getOccupancy(s) & ~board.getPieces(s, Piece.PAWN)
+                & ~board.getPieces(s, Piece.KING)) != 0;
+    }
+
+    /**
+     * Returns whether a move may be reduced: it is not a capture, promotion, or killer
+     * @param m the packed move
+     * @param ply the ply of the position, counting from the root
+     * @return true for a quiet move
+     */
+    private boolean isQuiet(int m, int ply)
+    {
+        if(Move.isCapture(m))
+            return false;
+        if(Move.type(m) == Piece.PAWN && (Move.to(m) < 8 || Move.to(m) >= 56))
+            return false;
+        return orderer == null || !orderer.isKiller(m, ply);
+    }
+
+    /**
+     * Looks up the current boardstate in the endgame tables. Sets tablebaseHit if it was found.
+     * @param toMove the side to move
+     * @return the score from the maximizing side's perspective: MATE less the plies from the
+     *         root to mate for a win, its negation for a loss, or 0 for a draw (or if the
+     *         position was not found)
+     */
+    private int probeTablebase(int toMove)
+    {
+        tablebaseHit = false;
+        if(tablebase == null)
+            return 0;
+        int value = tablebase.probe(board, toMove);
+        if(value == Tablebase.UNKNOWN)
+            return 0;
+        tablebaseHit = true;
+        tablebaseHits++;
+        if(value == 0)
+            return 0;
+        int plies = ply + (value > 0 ? value : -value - 1);
+        boolean win = (value > 0) == (toMove == side);
+        return win ? MATE - plies : -(MATE - plies);
+    }
+
+    /**
+     * Stores the result of searching a position in the transposition table, if there is one
+     * @param key the zobrist key of the position
+     * @param deep the number of plies searched
+     * @param score the score found
+     * @param alpha the alpha the position was searched with
+     * @param beta the beta the position was searched with
+     * @param bestMove the best move found, or Move.NONE
+     */
+    private void store(long key, int deep, int score, int alpha, int beta, int bestMove)
+    {
+        if(table == null)
+            return;
+        int bound = TranspositionTable.EXACT;
+        if(score <= alpha)
+            bound = TranspositionTable.UPPER;
+        else if(score >= beta)
+            bound = TranspositionTable.LOWER;
+        table.store(key, deep, toTable(score), bound, bestMove);
+    }
+
+    /**
+     * Converts a score to the form kept in the transposition table. Wins and losses by mate
+     * count the plies from the root, so they are stored counting from the position instead,
+     * which stays right when the position is reached again at another ply.
+     * @param score the score from the root
+     * @return the score to store
+     */
+    private int toTable(int score)
+    {
+        if(score > MATE_BOUND && score <= MATE)
+            return score + ply;
+        if(score < -MATE_BOUND && score >= -MATE)
+            return score - ply;
+        return score;
+    }
+
+    /**
+     * Converts a score read from the transposition table back to counting from the root
+     * @param score the stored score
+     * @return the score from the root
+     */
+    private int fromTable(int score)
+    {
+        if(score > MATE_BOUND && score <= MATE)
+            return score - ply;
+        if(score < -MATE_BOUND && score >= -MATE)
+            return score + ply;
+        return score;
+    }
+
+    /**
+     * Sorts the moves of a node so the ones most likely to cause a cutoff are searched first.
+     * Without a move orderer only the transposition table move is moved to the front.
+     * @param moves the packed moves of the position
+     * @param count the number of moves
+     * @param ply the ply of the position, counting from the root
+     * @param hashMove the move stored in the transposition table, or Move.NONE
+     */
+    private void sortMoves(int[] moves, int count, int ply, int hashMove)
+    {
+        if(orderer != null)
+        {
+            orderer.order(moves, count, ply, hashMove, capturePruning ? board : null);
+            return;
+        }
+        for(int i=0; i<count; i++)
+            if(moves[i] == hashMove)
+            {
+                moves[i] = moves[0];
+                moves[0] = hashMove;
+                return;
+            }
+    }
+
+    /**
+     * Plays a move of the search on the board
+     * @param m the packed move
+     */
+    private void play(int m)
+    {
+        board.makeMove(m);
+        ply++;
+    }
+
+    /**
+     * Takes back a move played by play
+     * @param m the packed move
+     */
+    private void undo(int m)
+    {
+        board.unmakeMove(m);
+        ply--;
+    }
+
+    /**
+     * Makes a move followed by the best line of the ply below the best line of the current ply
+     * @param m the packed move
+     */
+    private void updatePrincipalVariation(int m)
+    {
+        int[] line = pvTable[ply];
+        line[0] = m;
+        int length = Math.min(pvLength[ply + 1], line.length - 1);
+        System.arraycopy(pvTable[ply + 1], 0, line, 1, length);
+        pvLength[ply] = length + 1;
+    }
+
+    /**
+     * Counts a node, and stops the search once the deadline has passed or it was aborted. The
+     * clock and the abort flag are only read every 1024 nodes.
+     * @return true if the search has been stopped
+     */
+    private boolean outOfTime()
+    {
+        nodes++;
+        if((nodes & 1023) == 0
+                && (aborted || (deadline != 0 && System.nanoTime() > deadline)))
+            stopped = true;
+        return stopped;
+    }
+
+    /**
+     * Searches every move of the current boardstate to a fixed depth
+     * @param moves the packed legal moves of this player, searched in order
+     * @param count the number of moves
+     * @param plies the number of plies to search, counting this player's move
+     * @return the first move with the best score (see getBestScore), or Move.NONE if the
+     *         search was stopped
+     */
+    public int searchRoot(int[] moves, int count, int plies)
+    {
+        return searchRoot(moves, count, plies, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Searches every move of the current boardstate to a fixed depth, within a window of
+     * expected scores (an aspiration window). If the best score is at most alpha it is only an
+     * upper bound on the true score, and if it is at least beta only a lower bound, so the
+     * caller should search again with a wider window.
+     * @param moves the packed legal moves of this player, searched in order
+     * @param count the number of moves
+     * @param plies the number of plies to search, counting this player's move
+     * @param alpha the lowest score expected
+     * @param beta the highest score expected
+     * @return the first move with the best score (see getBestScore), or Move.NONE if the
+     *         search was stopped
+     */
+    public int searchRoot(int[] moves, int count, int plies, int alpha, int beta)
+    {
+        ply = 0;
+        pvLength[0] = 0;
+        int bestMove = moves[0];
+        int bestWorst = Integer.MIN_VALUE;
+        for(int i=0; i<count; i++)
+        {
+            int m = moves[i];
+            int a = Math.max(alpha, bestWorst);
+            play(m);
+            int worst;
+            if(!alphaBeta)
+                worst = valueOfWorstResponse(plies-1);
+            else if(i == 0 || !principalVariationSearch)
+                worst = valueOfWorstResponse(plies-1, a, beta);
+            else
+            {
+                worst = valueOfWorstResponse(plies-1, a, a+1);
+                if(worst>a && worst<beta && !stopped)
+                    worst = valueOfWorstResponse(plies-1, a, beta);
+            }
+            undo(m);
+            if(stopped)
+                return Move.NONE;
+            if(worst>bestWorst)
+            {
+                bestWorst = worst;
+                bestMove = m;
+                updatePrincipalVariation(m);
+                if(bestWorst>=beta)
+                    break;
+            }
+        }
+        if(pvLength[0] == 0)
+        {
+            //every move is mated, so no line was better than the others
+            pvTable[0][0] = bestMove;
+            pvLength[0] = 1;
+        }
+        bestScore = bestWorst;
+        return bestMove;
+    }
+
+    /**
+     * Returns the exact score of one move of the maximizing side, searched with a full window.
+     * The score only depends on the move and the searcher's tables, so it is the same whichever
+     * other moves are searched before it.
+     * @param move the packed move
+     * @param plies the number of plies to search, counting the move
+     * @return the score of the move, or 0 if the search was stopped
+     */
+    public int scoreMove(int move, int plies)
+    {
+        ply = 0;
+        play(move);
+        int score;
+        if(alphaBeta)
+            score = valueOfWorstResponse(plies-1, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        else
+            score = valueOfWorstResponse(plies-1);
+        undo(move);
+        updatePrincipalVariation(move);
+        return score;
+    }
+}
\ No newline at end of file
@@ -1,13 +1,152 @@
 import java.awt.Color;
+import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.*;
 /**
  * SmartPlayer class represents a chess player, it has a chess board, color, and name that it can return
- * Its next move will be decided by a 3 level deep simplified minimax algorithm
+ * Its next move will be decided by a simplified minimax search, 4 plies deep by default, either
+ * expanding every node or pruning refuted branches with alpha-beta (followed by a search of
+ * captures at the horizon). The root moves can be split across several threads, or several
+ * threads can search the whole position together (lazy SMP). While the opponent thinks, it can
+ * search the position it expects next (pondering).
  * @author Harrison Chen
  * @version 3/29/23
  */
 public class SmartPlayer extends Player
 {
+    //entries in the transposition table of each worker thread of a parallel search
+    private static final int WORKER_TABLE_SIZE = 1 << 18;
+
+    //whether to prune with alpha-beta instead of expanding every node
+    private boolean alphaBeta = true;
+
+    //number of plies searched, counting this player's move
+    private int depth = 4;
+
+    //number of nodes visited by the last search
+    private long nodes;
+
+    //results of earlier searches, consulted by the alpha-beta search (null to disable)
+    private TranspositionTable table = new TranspositionTable(1 << 20);
+
+    //sorts the moves of each node of the alpha-beta search (null to search in board order)
+    private MoveOrderer orderer = new MoveOrderer();
+
+    //the side index of this player's color
+    private int side;
+
+    //whether the alpha-beta search resolves captures at its horizon before scoring
+    private boolean quiescence = true;
+
+    //number of quiescence nodes visited by the last search (also counted in nodes)
+    private long qnodes;
+
+    //whether moves after the first of each node are searched with a null window
+    private boolean principalVariationSearch = true;
+
+    //half the width of the window around the last iteration's score that each iteration of
+    //the deepening search starts with, 0 to always search with a full window
+    private int aspirationWindow = 50;
+
+    //the expected line of the last completed iteration, and of the last root search
+    private int[] principalVariation = new int[0];
+    private int[] rootLine = new int[0];
+
+    //whether the search prunes with null moves and reduces late quiet moves
+    private boolean nullMovePruning = true;
+    private boolean lateMoveReductions = true;
+
+    //whether the search orders losing captures last and skips them in quiescence
+    private boolean capturePruning = true;
+
+    //how often the last search tried a null move, cut off with one, reduced a move, and
+    //searched a reduced move again
+    private long nullMoves;
+    private long nullMoveCutoffs;
+    private long reductions;
+    private long reSearches;
+
+    //how many losing captures the last search skipped
+    private long prunedCaptures;
+
+    //the legal moves of the position being searched
+    private int[] rootMoves = new int[256];
+
+    //time allowed per move in milliseconds, 0 to always search to depth
+    private long timeBudget;
+
+    //depth of the last completed iteration, and the score of its best move
+    private int completedDepth;
+    private int bestScore;
+
+    //number of threads the search runs on, and the pool running the extra ones
+    private int threads = 1;
+    private ForkJoinPool pool;
+
+    //tables of each worker thread, cleared before each root move so its score does not depend
+    //on which moves the thread searched before
+    private ThreadLocal<TranspositionTable> workerTables = new ThreadLocal<TranspositionTable>();
+    private ThreadLocal<MoveOrderer> workerOrderers = new ThreadLocal<MoveOrderer>();
+
+    //whether extra threads search the whole position alongside this one (lazy SMP) instead of
+    //splitting the root moves
+    private boolean lazySmp;
+
+    //whether split root moves are searched without the pruning whose scores depend on the
+    //window, so the move chosen is the one the sequential search chooses without it
+    private boolean exactSplit = true;
+
+    //nodes visited by each thread in the last call to nextMove, this thread first
+    private long[] threadNodes = new long[1];
+
+    //told about each completed depth, or null
+    private SearchListener listener;
+
+    //set by stop(), and the searcher of this thread while a search is running
+    private volatile boolean stopRequested;
+    private volatile Searcher running;
+
+    //true while nextMove is choosing a move, so stop() knows whether there is a search to stop
+    private final Object stopLock = new Object();
+    private boolean searchActive;
+
+    //the tasks of the root moves while they are split across the thread pool, for stop()
+    private volatile RootTask[] rootTasks;
+
+    //System.nanoTime() at which the current search started, and how long the last one took
+    private long searchStart;
+    private long searchNanos;
+
+    //how many nodes of the last search were cut off by a move, and how many transposition
+    //table lookups it made and how many of them hit
+    private long cutoffs;
+    private long tableProbes;
+    private long tableHits;
+
+    //where the statistics of each search are recorded and logged, or null
+    private SearchMetrics metrics;
+    private PrintStream moveLog;
+
+    //whether to search the expected position while the opponent thinks
+    private boolean pondering;
+
+    //the player searching the expected position and its search, or null if not pondering
+    private SmartPlayer ponderer;
+    private FutureTask<Move> ponderSearch;
+
+    //the zobrist key of the expected position, and the System.nanoTime() the search began
+    private long ponderKey;
+    private long ponderStart;
+
+    //whether the opponent played the expected move before the last call to nextMove
+    private boolean ponderHit;
+
+    //opening moves played without searching, or null
+    private PolyglotBook book;
+
+    //endgame tables probed during the search, or null
+    private Tablebase tablebase;
+
     /**
      * Constructs a new player with a chess board, color, and name
      * @param b the chess board
@@ -17,77 +156,1167 @@ public class SmartPlayer extends Player
     public SmartPlayer(Board b, Color c, String n)
     {
         super(b, c, n);
+        side = Board.side(c);
+    }
+
+    /**
+     * Chooses between alpha-beta and full minimax search, both return the same move
+     * @param on true to use alpha-beta pruning, false to expand every node
+     */
+    public void setAlphaBeta(boolean on)
+    {
+        alphaBeta = on;
+    }
+
+    /**
+     * Returns whether this player searches with alpha-beta pruning
+     * @return true if alpha-beta is used
+     */
+    public boolean isAlphaBeta()
+    {
+        return alphaBeta;
+    }
+
+    /**
+     * Sets the number of plies searched, counting this player's move
+     * @param plies the search depth, from 1 to Searcher.MAX_DEPTH
+     */
+    public void setDepth(int plies)
+    {
+        if(plies < 1)
+            throw new IllegalArgumentException("depth < 1");
+        if(plies > Searcher.MAX_DEPTH)
+            throw new IllegalArgumentException("depth > " + Searcher.MAX_DEPTH);
+        depth = plies;
+    }
+
+    /**
+     * Returns the number of plies searched, counting this player's move
+     * @return the search depth
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Sets the time allowed per move. With a budget, nextMove searches 1, 2, 3... plies deep
+     * until the time runs out, and plays the best move of the last completed depth.
+     * @param millis the time budget in milliseconds, or 0 to always search to the set depth
+     */
+    public void setTimeBudget(long millis)
+    {
+        if(millis < 0)
+            throw new IllegalArgumentException("millis < 0");
+        timeBudget = millis;
+    }
+
+    /**
+     * Returns the time allowed per move
+     * @return the time budget in milliseconds, 0 if there is none
+     */
+    public long getTimeBudget()
+    {
+        return timeBudget;
+    }
+
+    /**
+     * Returns the depth of the last completed search
+     * @return the number of plies the last move was chosen with
+     */
+    public int getCompletedDepth()
+    {
+        return completedDepth;
+    }
+
+    /**
+     * Returns the score of the move chosen by the last completed search
+     * @return the score from this player's perspective
+     */
+    public int getBestScore()
+    {
+        return bestScore;
+    }
+
+    /**
+     * Sets the transposition table used by the alpha-beta search
+     * @param t the table, or null to search without one
+     */
+    public void setTranspositionTable(TranspositionTable t)
+    {
+        table = t;
+    }
+
+    /**
+     * Returns the transposition table used by the alpha-beta search, whose counters give the
+     * probes, hits, and collisions of the searches so far
+     * @return the table, or null if there is none
+     */
+    public TranspositionTable getTranspositionTable()
+    {
+        return table;
+    }
+
+    /**
+     * Turns move ordering (captures by victim and attacker value, killer moves, and history)
+     * on or off for the alpha-beta search
+     * @param on true to order moves, false to search them in board order
+     */
+    public void setMoveOrdering(boolean on)
+    {
+        orderer = on ? new MoveOrderer() : null;
+    }
+
+    /**
+     * Returns the move orderer, whose counters give the cutoffs at each ply
+     * @return the move orderer, or null if moves are not ordered
+     */
+    public MoveOrderer getMoveOrderer()
+    {
+        return orderer;
+    }
+
+    /**
+     * Turns the quiescence search on or off. With it, the alpha-beta search keeps playing
+     * captures below its horizon until the position is quiet, instead of scoring in the middle
+     * of an exchange.
+     * @param on true to search captures at the horizon
+     */
+    public void setQuiescence(boolean on)
+    {
+        quiescence = on;
+    }
+
+    /**
+     * Returns whether the alpha-beta search resolves captures at its horizon
+     * @return true if quiescence search is used
+     */
+    public boolean isQuiescence()
+    {
+        return quiescence;
+    }
+
+    /**
+     * Returns the number of quiescence nodes visited by the last call to nextMove, which are
+     * included in getNodes
+     * @return the quiescence node count
+     */
+    public long getQuiescenceNodes()
+    {
+        return qnodes;
+    }
+
+    /**
+     * Turns principal variation search on or off (see Searcher.setPrincipalVariationSearch)
+     * @param on true to search moves after the first with a null window
+     */
+    public void setPrincipalVariationSearch(boolean on)
+    {
+        principalVariationSearch = on;
+    }
+
+    /**
+     * Returns whether the search uses principal variation search
+     * @return true if principal variation search is on
+     */
+    public boolean isPrincipalVariationSearch()
+    {
+        return principalVariationSearch;
+    }
+
+    /**
+     * Sets the aspiration window of the deepening search. From the third iteration on, each
+     * iteration first searches within this distance of the last score, and widens the window
+     * fourfold on the side the score falls outside of until it lands inside.
+     * @param centipawns half the width of the first window, 0 for a full window
+     */
+    public void setAspirationWindow(int centipawns)
+    {
+        if(centipawns < 0)
+            throw new IllegalArgumentException("aspiration window < 0");
+        aspirationWindow = centipawns;
+    }
+
+    /**
+     * Returns the aspiration window of the deepening search
+     * @return half the width of the first window in centipawns, 0 for a full window
+     */
+    public int getAspirationWindow()
+    {
+        return aspirationWindow;
+    }
+
+    /**
+     * Returns the line expected to follow the move chosen by the last call to nextMove: the
+     * move, the opponent's best reply, and so on, as deep as the last completed iteration
+     * @return the packed moves of the line, only the move if it came from the opening book, or
+     *         empty if no iteration completed
+     */
+    public int[] getPrincipalVariation()
+    {
+        return principalVariation.clone();
+    }
+
+    /**
+     * Turns null move pruning on or off (see Searcher.setNullMovePruning)
+     * @param on true to prune with null moves
+     */
+    public void setNullMovePruning(boolean on)
+    {
+        nullMovePruning = on;
+    }
+
+    /**
+     * Returns whether the search prunes with null moves
+     * @return true if null move pruning is on
+     */
+    public boolean isNullMovePruning()
+    {
+        return nullMovePruning;
+    }
+
+    /**
+     * Turns late move reductions on or off (see Searcher.setLateMoveReductions)
+     * @param on true to reduce late quiet moves
+     */
+    public void setLateMoveReductions(boolean on)
+    {
+        lateMoveReductions = on;
+    }
+
+    /**
+     * Returns whether the search reduces late quiet moves
+     * @return true if late move reductions are on
+     */
+    public boolean isLateMoveReductions()
+    {
+        return lateMoveReductions;
+    }
+
+    /**
+     * Turns capture pruning on or off (see Searcher.setCapturePruning)
+     * @param on true to order losing captures last and skip them in quiescence
+     */
+    public void setCapturePruning(boolean on)
+    {
+        capturePruning = on;
+    }
+
+    /**
+     * Returns whether the search throws away captures that lose material
+     * @return true if capture pruning is on
+     */
+    public boolean isCapturePruning()
+    {
+        return capturePruning;
+    }
+
+    /**
+     * Returns the number of null move searches made by the last call to nextMove (on this
+     * thread, or the root tasks when the root moves are split)
+     * @return the null move count
+     */
+    public long getNullMoves()
+    {
+        return nullMoves;
+    }
+
+    /**
+     * Returns the number of null move searches of the last call to nextMove that cut off
+     * @return the null move cutoff count
+     */
+    public long getNullMoveCutoffs()
+    {
+        return nullMoveCutoffs;
+    }
+
+    /**
+     * Returns the number of moves the last call to nextMove searched at a reduced depth
+     * @return the reduction count
+     */
+    public long getReductions()
+    {
+        return reductions;
+    }
+
+    /**
+     * Returns the number of reduced moves the last call to nextMove searched again at full
+     * depth
+     * @return the re-search count
+     */
+    public long getReSearches()
+    {
+        return reSearches;
+    }
+
+    /**
+     * Returns the number of losing captures the last call to nextMove skipped in quiescence
+     * @return the pruned capture count
+     */
+    public long getPrunedCaptures()
+    {
+        return prunedCaptures;
+    }
+
+    /**
+     * Sets the number of threads the search runs on. With more than one thread, each root move
+     * is scored with a full window on its own copy of the board, with tables cleared for each
+     * move, so the move chosen does not depend on how the moves are scheduled (unless lazy SMP
+     * is on, see setLazySmp). Null move pruning, late move reductions, and principal variation
+     * search make a move's score depend on the window it is searched with, so unless exact
+     * splitting is turned off (see setExactSplit) the root moves are searched without them, and
+     * the move chosen is the one a single thread chooses with them off.
+     * @param n the number of threads, 1 to search on the calling thread
+     */
+    public void setThreads(int n)
+    {
+        if(n < 1)
+            throw new IllegalArgumentException("threads < 1");
+        if(pool != null && n != threads)
+        {
+            pool.shutdown();
+            pool = null;
+        }
+        threads = n;
+    }
+
+    /**
+     * Returns the number of threads the search runs on
+     * @return the thread count
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Chooses how more than one thread is used. In lazy SMP mode this thread deepens the search
+     * as usual while the other threads each deepen their own search of the same position, odd
+     * helpers one ply ahead, all sharing the transposition table. The helpers only pass their
+     * results on through the table, which lets this thread reach each depth sooner, but the
+     * move chosen then depends on timing. Fixed depth searches also deepen one ply at a time.
+     * @param on true for lazy SMP, false to split the root moves
+     */
+    public void setLazySmp(boolean on)
+    {
+        lazySmp = on;
+    }
+
+    /**
+     * Returns whether extra threads run lazy SMP instead of splitting the root moves
+     * @return true in lazy SMP mode
+     */
+    public boolean isLazySmp()
+    {
+        return lazySmp;
+    }
+
+    /**
+     * Chooses whether splitting the root moves across threads (see setThreads) must choose the
+     * move the sequential search does. On, the default, each root move is searched without null
+     * move pruning, late move reductions, and principal variation search, whose scores depend on
+     * the window and would differ from the narrowing windows of a single thread. Off keeps them
+     * for a smaller search, but the move chosen then sometimes differs from a single thread's.
+     * @param on true for exact split searches
+     */
+    public void setExactSplit(boolean on)
+    {
+        exactSplit = on;
+    }
+
+    /**
+     * Returns whether split root searches choose the move the sequential search does
+     * @return true if exact splitting is on
+     */
+    public boolean isExactSplit()
+    {
+        return exactSplit;
+    }
+
+    /**
+     * Returns the number of nodes each thread visited during the last call to nextMove
+     * @return the node counts, this thread first, then the lazy SMP helpers (if any)
+     */
+    public long[] getThreadNodes()
+    {
+        return threadNodes.clone();
+    }
+
+    /**
+     * Sets the opening book. While the position is in the book, nextMove plays a book move
+     * without searching.
+     * @param b the book, or null to always search
+     */
+    public void setOpeningBook(PolyglotBook b)
+    {
+        book = b;
+    }
+
+    /**
+     * Returns the opening book
+     * @return the book, or null if there is none
+     */
+    public PolyglotBook getOpeningBook()
+    {
+        return book;
+    }
+
+    /**
+     * Sets the endgame tables. Positions found in them are scored by their distance to mate
+     * instead of being searched, so won endgames are played out by the shortest mate.
+     * @param tb the tablebase, or null to search every position
+     */
+    public void setTablebase(Tablebase tb)
+    {
+        tablebase = tb;
+    }
+
+    /**
+     * Returns the endgame tables
+     * @return the tablebase, or null if there is none
+     */
+    public Tablebase getTablebase()
+    {
+        return tablebase;
+    }
+
+    /**
+     * Sets the listener told about each depth nextMove completes
+     * @param l the listener, or null
+     */
+    public void setSearchListener(SearchListener l)
+    {
+        listener = l;
+    }
+
+    /**
+     * Stops the search in progress from another thread. nextMove then returns the best move of
+     * the deepest completed depth (or the first legal move if none was completed). When the root
+     * moves are split across threads, the searches of the moves already started are aborted as
+     * well. Does nothing if nextMove is not running, so a stop that comes too late cannot cut
+     * the next search short.
+     */
+    public void stop()
+    {
+        synchronized(stopLock)
+        {
+            if(!searchActive)
+                return;
+            stopRequested = true;
+        }
+        Searcher s = running;
+        if(s != null)
+            s.abort();
+        RootTask[] tasks = rootTasks;
+        if(tasks != null)
+            for(RootTask t : tasks)
+                t.abort();
+    }
+
+    /**
+     * Returns the number of nodes (board states) visited by the last call to nextMove
+     * @return the node count
+     */
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of nodes of the last call to nextMove that were cut off by one of
+     * their moves (not counting the lazy SMP helpers)
+     * @return the cutoff count
+     */
+    public long getCutoffs()
+    {
+        return cutoffs;
+    }
+
+    /**
+     * Returns the number of transposition table lookups made by the last call to nextMove (not
+     * counting the lazy SMP helpers)
+     * @return the probe count
+     */
+    public long getTableProbes()
+    {
+        return tableProbes;
+    }
+
+    /**
+     * Returns the number of transposition table lookups of the last call to nextMove that
+     * found the position
+     * @return the hit count
+     */
+    public long getTableHits()
+    {
+        return tableHits;
+    }
+
+    /**
+     * Returns how long the last call to nextMove took
+     * @return the time in nanoseconds
+     */
+    public long getSearchNanos()
+    {
+        return searchNanos;
+    }
+
+    /**
+     * Returns the speed of the last call to nextMove
+     * @return nodes per second
+     */
+    public long getNodesPerSecond()
+    {
+        return SearchMetrics.nodesPerSecond(nodes, searchNanos);
+    }
+
+    /**
+     * Returns the effective branching factor of the last call to nextMove: the number of moves
+     * per node of a uniform tree with its depth and node count
+     * @return the branching factor, 0 if no depth was completed
+     */
+    public double getBranchingFactor()
+    {
+        return SearchMetrics.branchingFactor(nodes, completedDepth);
+    }
+
+    /**
+     * Sets where the statistics of each search are recorded, such as metrics registered with
+     * JMX (see SearchMetrics.register). Without metrics nothing is recorded.
+     * @param m the metrics, or null to stop recording
+     */
+    public void setMetrics(SearchMetrics m)
+    {
+        metrics = m;
+    }
+
+    /**
+     * Returns where the statistics of each search are recorded
+     * @return the metrics, or null if there are none
+     */
+    public SearchMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Sets where a line of statistics (see statistics) is printed after each move
+     * @param out the log, or null to print nothing
+     */
+    public void setMoveLog(PrintStream out)
+    {
+        moveLog = out;
+    }
+
+    /**
+     * Returns where a line of statistics is printed after each move
+     * @return the log, or null if there is none
+     */
+    public PrintStream getMoveLog()
+    {
+        return moveLog;
+    }
+
+    /**
+     * Returns the statistics of the last call to nextMove on one line, for example
+     * "depth 8 score 15 nodes 1196038 qnodes 402311 cutoffs 98210 tt 41022/120344 time 812ms
+     * nps 1472953 ebf 5.74"
+     * @return the statistics
+     */
+    public String statistics()
+    {
+        return "depth " + completedDepth + " score " + bestScore + " nodes " + nodes
+               + " qnodes " + qnodes + " cutoffs " + cutoffs + " tt " + tableHits + "/"
+               + tableProbes + " time " + searchNanos / 1000000 + "ms nps "
+               + getNodesPerSecond() + " ebf " + String.format("%.2f", getBranchingFactor());
+    }
+
+    /**
+     * Turns pondering on or off. After choosing a move, a pondering player guesses the
+     * opponent's reply (the second move of the principal variation) and searches the resulting
+     * position on a background thread until its next call to nextMove, sharing its
+     * transposition table and move orderer. If the opponent played the expected move, that
+     * search goes on for what is left of the time budget (or until it reaches the depth) and
+     * its move is played, at once if it is already done; otherwise it is aborted and a new
+     * search begins.
+     * @param on true to search while the opponent thinks
+     */
+    public void setPondering(boolean on)
+    {
+        pondering = on;
+        if(!on)
+            stopPondering();
+    }
+
+    /**
+     * Returns whether this player searches while the opponent thinks
+     * @return true if pondering is on
+     */
+    public boolean isPondering()
+    {
+        return pondering;
+    }
+
+    /**
+     * Returns whether the last call to nextMove found the opponent had played the expected
+     * move, so it used the search made while the opponent thought
+     * @return true after a ponder hit
+     */
+    public boolean isPonderHit()
+    {
+        return ponderHit;
+    }
+
+    /**
+     * Aborts the search of the expected position, if one is running, and waits for it to end.
+     * Its result is thrown away, so a search that failed is not reported.
+     */
+    public void stopPondering()
+    {
+        if(ponderSearch == null)
+            return;
+        try
+        {
+            ponderer.stop();
+            awaitPonderSearch();
+        }
+        catch(IllegalStateException e)
+        {
+            //nothing of the failed search is used
+        }
+        finally
+        {
+            ponderer = null;
+            ponderSearch = null;
+        }
+    }
+
+    /**
+     * Starts searching the position expected after a move of this player, if the principal
+     * variation has a reply to it
+     * @param move the move this player is about to play
+     */
+    private void startPondering(Move move)
+    {
+        if(principalVariation.length < 2 || principalVariation[0] != Board.pack(move))
+            return;
+        Board b = new Board(getBoard());
+        Game.executeMove(b, b.toMove(principalVariation[0]));
+        Game.executeMove(b, b.toMove(principalVariation[1]));
+        SmartPlayer p = new SmartPlayer(b, getColor(), getName() + " ponder");
+        p.alphaBeta = alphaBeta;
+        p.depth = depth;
+        p.table = table;
+        p.orderer = orderer;
+        p.quiescence = quiescence;
+        if(threads > 1 && pool == null)
+            pool = new ForkJoinPool(threads);
+        p.threads = threads;
+        p.pool = pool;
+        p.lazySmp = lazySmp;
+        p.exactSplit = exactSplit;
+        p.principalVariationSearch = principalVariationSearch;
+        p.aspirationWindow = aspirationWindow;
+        p.nullMovePruning = nullMovePruning;
+        p.lateMoveReductions = lateMoveReductions;
+        p.capturePruning = capturePruning;
+        p.tablebase = tablebase;
+        //searched until stopped, then given the rest of the budget on a hit
+        if(timeBudget != 0)
+            p.timeBudget = 24L * 60 * 60 * 1000;
+        //active from now, so a stop that comes before its thread starts searching still counts
+        synchronized(p.stopLock)
+        {
+            p.searchActive = true;
+        }
+        ponderer = p;
+        ponderKey = b.getKey(side);
+        ponderStart = System.nanoTime();
+        ponderSearch = new FutureTask<Move>(p::nextMove);
+        Thread thread = new Thread(ponderSearch, p.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Finishes the search of the expected position once the opponent has played the expected
+     * move, and takes over its results
+     * @return the move found, on this player's board
+     * @throws IllegalStateException if the search failed
+     */
+    private Move ponderHit()
+    {
+        long left = timeBudget * 1000000 - (System.nanoTime() - ponderStart);
+        Move move = null;
+        SmartPlayer p = ponderer;
+        try
+        {
+            if(timeBudget != 0)
+            {
+                try
+                {
+                    move = ponderSearch.get(Math.max(0, left), TimeUnit.NANOSECONDS);
+                }
+                catch(TimeoutException | ExecutionException e)
+                {
+                    p.stop();
+                }
+                catch(InterruptedException e)
+                {
+                    p.stop();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if(move == null)
+                move = awaitPonderSearch();
+        }
+        finally
+        {
+            ponderer = null;
+            ponderSearch = null;
+        }
+        nodes = p.nodes;
+        qnodes = p.qnodes;
+        completedDepth = p.completedDepth;
+        bestScore = p.bestScore;
+        principalVariation = p.principalVariation;
+        threadNodes = p.threadNodes;
+        nullMoves = p.nullMoves;
+        nullMoveCutoffs = p.nullMoveCutoffs;
+        reductions = p.reductions;
+        reSearches = p.reSearches;
+        prunedCaptures = p.prunedCaptures;
+        cutoffs = p.cutoffs;
+        tableProbes = p.tableProbes;
+        tableHits = p.tableHits;
+        return move == null ? null : getBoard().toMove(Board.pack(move));
+    }
+
+    /**
+     * Waits for the search of the expected position to end. The wait is not cut short by an
+     * interrupt, which is passed on once the search has ended.
+     * @return the move it found, on the ponderer's board, or null if it had none
+     * @throws IllegalStateException if the search failed
+     */
+    private Move awaitPonderSearch()
+    {
+        boolean interrupted = false;
+        try
+        {
+            while(true)
+            {
+                try
+                {
+                    return ponderSearch.get();
+                }
+                catch(InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        catch(ExecutionException e)
+        {
+            throw new IllegalStateException("Pondering failed", e.getCause());
+        }
+        finally
+        {
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
     }
 
     /**
      * Returns the score of this board state from the perspective of this smart player
-     * @return the total value of the pieces of this player - total value of the pieces of opponent
+     * @return the total value of the pieces of this player - total value of the pieces of opponent,
+     *         plus the difference in piece-square bonuses, in hundredths of a pawn
      */
     public int score()
     {
-        int score = 0;
-        Board board = getBoard();
-        for(Location l: board.getOccupiedLocations())
+        return getBoard().evaluate(side);
+    }
+
+    /**
+     * Searches every root move on its own copy of the board, spread across the thread pool
+     * @param moves the packed legal moves of this player, in the order ties are broken
+     * @param count the number of moves
+     * @param plies the number of plies to search, counting this player's move
+     * @param deadline the System.nanoTime() at which to give up, or 0 for no limit
+     * @return the first move with the best score (stored in bestScore), or Move.NONE if the
+     *         search was stopped
+     */
+    private int searchParallel(int[] moves, int count, int plies, long deadline)
+    {
+        if(pool == null)
+            pool = new ForkJoinPool(threads);
+        RootTask[] tasks = new RootTask[count];
+        for(int i=0; i<count; i++)
+            tasks[i] = new RootTask(new Board(getBoard()), moves[i], plies, deadline);
+        rootTasks = tasks;
+        for(int i=0; i<count; i++)
+            pool.execute(tasks[i]);
+        int bestMove = moves[0];
+        int bestWorst = Integer.MIN_VALUE;
+        int[] bestLine = new int[0];
+        boolean stopped = false;
+        for(int i=0; i<count; i++)
         {
-            Piece piece = board.get(l);
-            if(piece != null)
+            int worst = tasks[i].join();
+            if(tasks[i].searcher != null)
+                count(tasks[i].searcher);
+            //a task skipped or stopped before it finished has no score to compare
+            if(tasks[i].searcher == null || tasks[i].stopped)
             {
-                if(piece.getColor() == getColor())
-                    score += piece.getValue();
-                else
-                    score -= piece.getValue();
+                stopped = true;
+                continue;
+            }
+            if(worst>bestWorst)
+            {
+                bestWorst = worst;
+                bestMove = moves[i];
+                bestLine = tasks[i].searcher.getPrincipalVariation();
             }
         }
-        return score;
+        rootTasks = null;
+        if(stopped)
+            return Move.NONE;
+        bestScore = bestWorst;
+        rootLine = bestLine;
+        return bestMove;
     }
 
     /**
-     * Returns the value of the worst repsonse an opponent could make at the current boardstate
-     * @return the minimum scored move that the opponent can make in this boardstate
+     * RootTask scores one root move on a worker thread, using that thread's tables
      */
-    private int valueOfWorstResponse(int deep)
+    private class RootTask extends RecursiveTask<Integer>
     {
-        if(deep == 0)
-            return score();
-        Color c = Color.BLACK;
-        if(getColor()==Color.BLACK) c = Color.WHITE;
-        ArrayList<Move> moves = getBoard().allMoves(c);
-        int minScore = Integer.MAX_VALUE;
-        for(Move m : moves)
+        private static final long serialVersionUID = 1L;
+
+        private Board board;
+        private int move;
+        private int plies;
+        private long deadline;
+
+        //the searcher whose counters are read once the task is done, null if it was skipped
+        private volatile Searcher searcher;
+        private boolean stopped;
+
+        /**
+         * Constructs a task scoring a move
+         * @param b a copy of the board, used only by this task
+         * @param m the packed move
+         * @param p the number of plies to search, counting the move
+         * @param d the System.nanoTime() at which to give up, or 0 for no limit
+         */
+        public RootTask(Board b, int m, int p, long d)
+        {
+            board = b;
+            move = m;
+            plies = p;
+            deadline = d;
+        }
+
+        /**
+         * Scores the move
+         * @return the score of the move from this player's perspective
+         */
+        protected Integer compute()
         {
-            getBoard().executeMove(m);
-            //display.showBoard();
-            int score = valueOfBestMove(deep-1);
-            if(score<minScore)
+            if(stopRequested)
+            {
+                stopped = true;
+                return 0;
+            }
+            TranspositionTable t = null;
+            if(table != null)
+            {
+                t = workerTables.get();
+                if(t == null)
+                    workerTables.set(t = new TranspositionTable(WORKER_TABLE_SIZE));
+                t.clear();
+            }
+            MoveOrderer o = null;
+            if(orderer != null)
+            {
+                o = workerOrderers.get();
+                if(o == null)
+                    workerOrderers.set(o = new MoveOrderer());
+                o.clear();
+            }
+            searcher = newSearcher(board, t, o);
+            if(exactSplit)
             {
-                minScore = score;
+                searcher.setNullMovePruning(false);
+                searcher.setLateMoveReductions(false);
+                searcher.setPrincipalVariationSearch(false);
             }
-            getBoard().undoMove(m);
+            searcher.setDeadline(deadline);
+            //stop() may have come after the check above but before it could see this searcher
+            if(stopRequested)
+                searcher.abort();
+            int score = searcher.scoreMove(move, plies);
+            stopped = searcher.isStopped();
+            return score;
+        }
+
+        /**
+         * Stops the search of the move, if it has started, from another thread
+         */
+        public void abort()
+        {
+            Searcher s = searcher;
+            if(s != null)
+                s.abort();
         }
-        return minScore;
     }
 
     /**
-     * Returns the value of the best move the player could make at the current boardstate
-     * @return the maximum scored move that the player can make in this boardstate
+     * Returns a searcher of a board for this player, with this player's search options
+     * @param b the board to play moves on
+     * @param t the transposition table, or null
+     * @param o the move orderer, or null
+     * @return the searcher
      */
-    private int valueOfBestMove(int deep)
+    private Searcher newSearcher(Board b, TranspositionTable t, MoveOrderer o)
     {
-        if(deep == 0)
-            return score();
-        ArrayList<Move> moves = getBoard().allMoves(getColor());
-        int maxScore = Integer.MIN_VALUE;
-        for(Move m : moves)
+        Searcher searcher = new Searcher(b, side, t, o);
+        searcher.setAlphaBeta(alphaBeta);
+        searcher.setQuiescence(quiescence);
+        searcher.setPrincipalVariationSearch(principalVariationSearch);
+        searcher.setNullMovePruning(nullMovePruning);
+        searcher.setLateMoveReductions(lateMoveReductions);
+        searcher.setCapturePruning(capturePruning);
+        searcher.setTablebase(tablebase);
+        return searcher;
+    }
+
+    /**
+     * Adds the counters of a finished search to this player's totals
+     * @param searcher the searcher
+     */
+    private void count(Searcher searcher)
+    {
+        nodes += searcher.getNodes();
+        qnodes += searcher.getQuiescenceNodes();
+        nullMoves += searcher.getNullMoves();
+        nullMoveCutoffs += searcher.getNullMoveCutoffs();
+        reductions += searcher.getReductions();
+        reSearches += searcher.getReSearches();
+        prunedCaptures += searcher.getPrunedCaptures();
+        cutoffs += searcher.getCutoffs();
+        tableProbes += searcher.getTableProbes();
+        tableHits += searcher.getTableHits();
+    }
+
+    /**
+     * Searches every root move to a fixed depth, on this thread or across the thread pool
+     * @param searcher the searcher used on this thread
+     * @param count the number of root moves
+     * @param plies the number of plies to search, counting this player's move
+     * @param deadline the System.nanoTime() at which to give up, or 0 for no limit
+     * @param alpha the lowest score expected (ignored when the root moves are split)
+     * @param beta the highest score expected (ignored when the root moves are split)
+     * @return the first move with the best score (stored in bestScore), or Move.NONE if the
+     *         search was stopped
+     */
+    private int searchRoot(Searcher searcher, int count, int plies, long deadline, int alpha,
+                           int beta)
+    {
+        if(splitsRoot(count))
+            return searchParallel(rootMoves, count, plies, deadline);
+        searcher.reset();
+        searcher.setDeadline(deadline);
+        int m = searcher.searchRoot(rootMoves, count, plies, alpha, beta);
+        count(searcher);
+        if(searcher.isStopped())
+            return Move.NONE;
+        bestScore = searcher.getBestScore();
+        rootLine = principalVariation(searcher.getPrincipalVariation(), plies);
+        return m;
+    }
+
+    /**
+     * Returns whether the root moves are split across the thread pool, each scored exactly
+     * @param count the number of root moves
+     * @return true if there are several threads and several moves, and lazy SMP is off
+     */
+    private boolean splitsRoot(int count)
+    {
+        return threads > 1 && count > 1 && !lazySmp;
+    }
+
+    /**
+     * HelperTask deepens its own search of the root position on a worker thread in lazy SMP
+     * mode, until it is aborted
+     */
+    private class HelperTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private Searcher searcher;
+        private int[] moves = new int[256];
+        private int count;
+        private int startDepth;
+
+        /**
+         * Constructs a helper searching a copy of the board
+         * @param index the number of the helper, counting from 1
+         */
+        public HelperTask(int index)
         {
-            getBoard().executeMove(m);
-            int score = valueOfWorstResponse(deep-1);
-            if(score>maxScore)
+            Board b = new Board(getBoard());
+            searcher = newSearcher(b, table, new MoveOrderer());
+            searcher.reset();
+            count = b.generateMoves(side, moves, 0);
+            startDepth = 1 + (index & 1);
+        }
+
+        /**
+         * Searches one depth after another, the best move of each depth first in the next
+         */
+        protected void compute()
+        {
+            for(int d=startDepth; d<=Searcher.MAX_DEPTH; d++)
             {
-                maxScore = score;
+                int m = searcher.searchRoot(moves, count, d);
+                if(m == Move.NONE)
+                    return;
+                int i = 0;
+                while(moves[i] != m)
+                    i++;
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = m;
             }
-            getBoard().undoMove(m);
         }
-        return maxScore;
+
+        /**
+         * Stops the search, and waits for it to unwind
+         * @return the number of nodes the helper visited
+         */
+        public long stop()
+        {
+            searcher.abort();
+            join();
+            return searcher.getNodes();
+        }
+    }
+
+    /**
+     * Deepens the search one ply at a time, until a depth or a time limit
+     * @param searcher the searcher used on this thread
+     * @param count the number of root moves
+     * @param maxDepth the deepest search
+     * @param stopAt the System.nanoTime() at which to stop, or 0 for no limit
+     * @return the best move of the deepest completed iteration
+     */
+    private int deepen(Searcher searcher, int count, int maxDepth, long stopAt)
+    {
+        //the first iteration always completes so there is a move to play
+        int[] moves = rootMoves;
+        int bestMove = moves[0];
+        for(int d=1; d<=maxDepth; d++)
+        {
+            //search close to the last score first, unless it was a mate
+            long window = aspirationWindow;
+            boolean aspire = window > 0 && d > 2 && !splitsRoot(count)
+                             && Math.abs(bestScore) < Searcher.MATE_BOUND;
+            int alpha = Integer.MIN_VALUE;
+            int beta = Integer.MAX_VALUE;
+            //a search that fails outside the window leaves only a bound in bestScore, so keep
+            //the last completed depth's score in case the search again is stopped
+            int completedScore = bestScore;
+            int[] completedLine = rootLine;
+            if(aspire)
+            {
+                alpha = (int) Math.max(Integer.MIN_VALUE, bestScore - window);
+                beta = (int) Math.min(Integer.MAX_VALUE, bestScore + window);
+            }
+            int m = searchRoot(searcher, count, d, d == 1 ? 0 : stopAt, alpha, beta);
+            while(m != Move.NONE
+                  && ((bestScore<=alpha && alpha!=Integer.MIN_VALUE)
+                      || (bestScore>=beta && beta!=Integer.MAX_VALUE)))
+            {
+                //widen the window on the side the score fell outside of
+                window *= 4;
+                if(bestScore<=alpha)
+                    alpha = (int) Math.max(Integer.MIN_VALUE, bestScore - window);
+                else
+                    beta = (int) Math.min(Integer.MAX_VALUE, bestScore + window);
+                m = searchRoot(searcher, count, d, stopAt, alpha, beta);
+            }
+            if(m == Move.NONE)
+            {
+                bestScore = completedScore;
+                rootLine = completedLine;
+                break;
+            }
+            bestMove = m;
+            completedDepth = d;
+            report(d);
+            //a mate within the depth searched cannot get any shorter
+            if(stopRequested || count==1 || Math.abs(bestScore) >= Searcher.MATE - d
+                    || (stopAt != 0 && System.nanoTime() > stopAt))
+                break;
+            //search the best move first in the next iteration
+            int i = 0;
+            while(moves[i] != m)
+                i++;
+            System.arraycopy(moves, 0, moves, 1, i);
+            moves[0] = m;
+        }
+        return bestMove;
+    }
+
+    /**
+     * Records the expected line of a completed depth, and tells the listener, if there is one
+     * @param d the depth
+     */
+    private void report(int d)
+    {
+        principalVariation = rootLine;
+        if(listener != null)
+            listener.depthCompleted(d, bestScore, nodes, System.nanoTime() - searchStart,
+                                    principalVariation.clone());
+    }
+
+    /**
+     * Returns the expected line found by the search, continued where it ends early (at a
+     * transposition table cutoff) by following the best moves stored in the transposition table
+     * for as long as they are legal
+     * @param line the packed moves found by the search, starting with this player's move
+     * @param length the longest line to return
+     * @return the packed moves of the line
+     */
+    private int[] principalVariation(int[] line, int length)
+    {
+        Board board = getBoard();
+        int[] pv = new int[length];
+        int[] legal = new int[256];
+        int n = 0;
+        int toMove = side;
+        int m = line.length > 0 ? line[0] : Move.NONE;
+        while(m != Move.NONE && n < length)
+        {
+            pv[n++] = m;
+            board.makeMove(m);
+            toMove = 1 - toMove;
+            if(n < line.length)
+            {
+                m = line[n];
+                continue;
+            }
+            if(table == null || n == length)
+                break;
+            long entry = table.probe(board.getKey(toMove));
+            m = Move.NONE;
+            int count = board.generateMoves(toMove, legal, 0);
+            for(int i=0; i<count; i++)
+                if(legal[i] == TranspositionTable.getMove(entry))
+                    m = legal[i];
+        }
+        for(int i=n-1; i>=0; i--)
+            board.unmakeMove(pv[i]);
+        return Arrays.copyOf(pv, n);
     }
 
     /**
@@ -96,23 +1325,135 @@ public class SmartPlayer extends Player
      */
     public Move nextMove()
     {
-        ArrayList<Move> moves = getBoard().allMoves(getColor());
-        if(moves.size()==0)
+        long start = System.nanoTime();
+        synchronized(stopLock)
+        {
+            searchActive = true;
+        }
+        ponderHit = ponderSearch != null && getBoard().getKey(side) == ponderKey;
+        Move move = null;
+        try
+        {
+            if(ponderHit)
+            {
+                try
+                {
+                    move = ponderHit();
+                }
+                catch(IllegalStateException e)
+                {
+                    //the search of the expected position failed, so search this one afresh
+                    ponderHit = false;
+                }
+            }
+            if(!ponderHit)
+            {
+                stopPondering();
+                move = chooseMove();
+            }
+        }
+        finally
+        {
+            synchronized(stopLock)
+            {
+                searchActive = false;
+                stopRequested = false;
+            }
+        }
+        searchNanos = System.nanoTime() - start;
+        if(metrics != null)
+            metrics.record(this);
+        if(moveLog != null)
+            moveLog.println(getName() + " " + (move == null ? "none" : Move.name(Board.pack(move)))
+                            + (ponderHit ? " ponderhit " : " ") + statistics());
+        if(pondering && move != null)
+            startPondering(move);
+        return move;
+    }
+
+    /**
+     * Chooses the next move: from the opening book if it has one, otherwise by searching
+     * @return the move, or null if there are no legal moves
+     */
+    private Move chooseMove()
+    {
+        nodes = 1;
+        qnodes = 0;
+        nullMoves = 0;
+        nullMoveCutoffs = 0;
+        reductions = 0;
+        reSearches = 0;
+        prunedCaptures = 0;
+        cutoffs = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        principalVariation = new int[0];
+        if(book != null)
+        {
+            int m = book.pick(getBoard(), side);
+            if(m != Move.NONE)
+            {
+                completedDepth = 0;
+                principalVariation = new int[] {m};
+                return getBoard().toMove(m);
+            }
+        }
+        if(table != null)
+            table.newSearch();
+        if(orderer != null)
+            orderer.newSearch();
+        searchStart = System.nanoTime();
+        Searcher searcher = newSearcher(getBoard(), table, orderer);
+        running = searcher;
+        if(stopRequested)
+            searcher.abort();
+        int count = getBoard().generateMoves(side, rootMoves, 0);
+        if(count==0)
+        {
+            running = null;
             return null;
-        Move bestMove = moves.get(0);
-        int bestWorst = Integer.MIN_VALUE;
-        for(Move m : moves)
+        }
+
+        HelperTask[] helpers = new HelperTask[0];
+        if(lazySmp && threads > 1 && count > 1)
         {
-            getBoard().executeMove(m);
-            int worst = valueOfWorstResponse(3);
-            if(worst>bestWorst)
+            if(pool == null)
+                pool = new ForkJoinPool(threads);
+            helpers = new HelperTask[threads - 1];
+            for(int i=0; i<helpers.length; i++)
             {
-                bestWorst = worst;
-                bestMove = m;
+                helpers[i] = new HelperTask(i + 1);
+                pool.execute(helpers[i]);
             }
-            getBoard().undoMove(m);
         }
-        return bestMove;
+
+        int bestMove;
+        if(timeBudget != 0)
+            bestMove = deepen(searcher, count, Searcher.MAX_DEPTH,
+                              System.nanoTime() + timeBudget * 1000000);
+        else if(helpers.length > 0)
+            bestMove = deepen(searcher, count, depth, 0);
+        else
+        {
+            bestMove = searchRoot(searcher, count, depth, 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            completedDepth = depth;
+            if(bestMove == Move.NONE)
+            {
+                bestMove = rootMoves[0];
+                completedDepth = 0;
+            }
+            else
+                report(depth);
+        }
+        running = null;
+
+        threadNodes = new long[1 + helpers.length];
+        threadNodes[0] = nodes;
+        for(int i=0; i<helpers.length; i++)
+        {
+            threadNodes[i + 1] = helpers[i].stop();
+            nodes += threadNodes[i + 1];
+        }
+        return getBoard().toMove(bestMove);
     }
 }
-
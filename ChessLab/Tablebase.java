@@ -0,0 +1,267 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tablebase class probes endgame tables of up to MAX_PIECES pieces (kings included) written by
+ * TablebaseGenerator. Each table covers one material signature, such as KQK or KRKN (the white
+ * pieces after the first K, the black pieces after the second), and holds one byte per placement
+ * of the pieces for each side to move: the distance to mate in plies, or 0 for a draw. Tables are
+ * memory-mapped from a directory the first time their material is probed. Material with the
+ * colors the other way around (KKQ) is looked up in the flipped table with the board mirrored.
+ * The tables follow this engine's rules: no castling or en passant, pawns promote to queens, and
+ * a side left without legal moves has lost, whether or not it is in check.
+ * @author Harrison Chen
+ * @version 5/4/23
+ */
+public class Tablebase
+{
+    //the most pieces a table covers, kings included
+    public static final int MAX_PIECES = 4;
+
+    //returned by probe when there is no table for the position
+    public static final int UNKNOWN = 128;
+
+    //the letters of the piece types in signatures, indexed by type code
+    public static final String LETTERS = "PNBRQK";
+
+    //the first bytes of a table file, followed by the number of pieces and then the entries
+    public static final int MAGIC = 0x434c5442;
+    public static final int HEADER_BYTES = 8;
+
+    //the directory of the tables, and the tables mapped so far (empty for missing files)
+    private File directory;
+    private ConcurrentHashMap<String, Optional<ByteBuffer>> tables =
+        new ConcurrentHashMap<String, Optional<ByteBuffer>>();
+
+    //reused by probe on each thread: sides, types, and squares of the pieces on the board
+    private ThreadLocal<int[][]> pieceLists = new ThreadLocal<int[][]>();
+
+    /**
+     * Constructs a tablebase reading tables from a directory
+     * @param dir the directory holding the .tb files
+     */
+    public Tablebase(String dir)
+    {
+        directory = new File(dir);
+    }
+
+    /**
+     * Returns the file of a table
+     * @param signature the material signature, such as KQKR
+     * @return the file in this tablebase's directory
+     */
+    public File file(String signature)
+    {
+        return new File(directory, signature + ".tb");
+    }
+
+    /**
+     * Returns a table's entries, mapping its file if this is the first use
+     * @param signature the material signature
+     * @return the entries after the header, or null if there is no such table
+     */
+    private ByteBuffer table(String signature)
+    {
+        Optional<ByteBuffer> t = tables.get(signature);
+        if (t == null)
+        {
+            t = Optional.ofNullable(map(file(signature)));
+            tables.put(signature, t);
+        }
+        return t.orElse(null);
+    }
+
+    //maps a table file read-only, returning null if it is missing or not a table
+    private static ByteBuffer map(File f)
+    {
+        if (!f.isFile())
+            return null;
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+                return null;
+            int n = buffer.getInt(4);
+            if (buffer.capacity() != HEADER_BYTES + (2L << (6 * n)))
+                return null;
+            buffer.position(HEADER_BYTES);
+            return buffer.slice();
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Forgets whether a table exists, so its file is looked for again on the next probe (after
+     * it has been generated, say)
+     * @param signature the material signature
+     */
+    public void forget(String signature)
+    {
+        tables.remove(signature);
+    }
+
+    /**
+     * Returns whether a table is available
+     * @param signature the material signature, such as KQK
+     * @return true if its file exists and is a table
+     */
+    public boolean has(String signature)
+    {
+        return table(signature) != null;
+    }
+
+    /**
+     * Returns the signature of some material, with the stronger side as white: the side with
+     * more pieces, or with the more valuable piece where they first differ
+     * @param white the type codes of white's pieces other than the king
+     * @param black the type codes of black's pieces other than the king
+     * @return the signature
+     */
+    public static String signature(int[] white, int[] black)
+    {
+        String w = letters(white);
+        String b = letters(black);
+        return stronger(w, b) ? "K" + w + "K" + b : "K" + b + "K" + w;
+    }
+
+    /**
+     * Returns the letters of some pieces, most valuable first
+     * @param types the type codes of the pieces
+     * @return the letters, such as QR
+     */
+    public static String letters(int[] types)
+    {
+        int[] sorted = types.clone();
+        Arrays.sort(sorted);
+        StringBuilder s = new StringBuilder();
+        for (int i = sorted.length - 1; i >= 0; i--)
+            s.append(LETTERS.charAt(sorted[i]));
+        return s.toString();
+    }
+
+    //returns true if pieces a (sorted) are at least as strong as pieces b
+    private static boolean stronger(String a, String b)
+    {
+        if (a.length() != b.length())
+            return a.length() > b.length();
+        for (int i = 0; i < a.length(); i++)
+            if (a.charAt(i) != b.charAt(i))
+                return LETTERS.indexOf(a.charAt(i)) > LETTERS.indexOf(b.charAt(i));
+        return true;
+    }
+
+    /**
+     * Returns one entry of a table
+     * @param signature the material signature, whose length is the number of pieces
+     * @param sideToMove Board.WHITE or Board.BLACK
+     * @param index the index of the piece placement in the table
+     * @return the entry, or UNKNOWN if there is no table
+     */
+    public int entry(String signature, int sideToMove, int index)
+    {
+        ByteBuffer table = table(signature);
+        if (table == null)
+            return UNKNOWN;
+        return table.get((sideToMove << (6 * signature.length())) + index);
+    }
+
+    /**
+     * Returns the value of a position in the tables
+     * @param sides the side of each piece
+     * @param types the type code of each piece
+     * @param squares the square of each piece
+     * @param n the number of pieces, at most MAX_PIECES, including both kings
+     * @param sideToMove Board.WHITE or Board.BLACK
+     * @return the number of plies until the side to move mates (positive), -1 - the number of
+     *         plies until it is mated (negative), 0 for a draw, or UNKNOWN if there is no table
+     */
+    public int value(int[] sides, int[] types, int[] squares, int n, int sideToMove)
+    {
+        if (n == 2)
+            return 0;
+        int whiteCount = 0;
+        int blackCount = 0;
+        int[] white = new int[n - 2];
+        int[] black = new int[n - 2];
+        for (int i = 0; i < n; i++)
+            if (types[i] != Piece.KING)
+            {
+                if (sides[i] == Board.WHITE)
+                    white[whiteCount++] = types[i];
+                else
+                    black[blackCount++] = types[i];
+            }
+        String w = letters(Arrays.copyOf(white, whiteCount));
+        String b = letters(Arrays.copyOf(black, blackCount));
+        boolean flip = !stronger(w, b);
+        ByteBuffer table = table(flip ? "K" + b + "K" + w : "K" + w + "K" + b);
+        if (table == null)
+            return UNKNOWN;
+
+        //the table's piece order: white king, black king, white pieces, black pieces, each
+        //side's pieces most valuable first
+        int index = 0;
+        int shift = 12;
+        int first = flip ? Board.BLACK : Board.WHITE;
+        for (int i = 0; i < n; i++)
+        {
+            int sq = flip ? squares[i] ^ 56 : squares[i];
+            if (types[i] == Piece.KING)
+                index |= sq << (sides[i] == first ? 0 : 6);
+        }
+        for (int side = first, k = 0; k < 2; k++, side = 1 - side)
+            for (int type = Piece.QUEEN; type >= Piece.PAWN; type--)
+                for (int i = 0; i < n; i++)
+                    if (sides[i] == side && types[i] == type)
+                    {
+                        index |= (flip ? squares[i] ^ 56 : squares[i]) << shift;
+                        shift += 6;
+                    }
+        int stm = flip ? 1 - sideToMove : sideToMove;
+        return table.get((stm << (6 * n)) + index);
+    }
+
+    /**
+     * Returns the value of a board position in the tables
+     * @param board the board
+     * @param sideToMove Board.WHITE or Board.BLACK
+     * @return the number of plies until the side to move mates (positive), -1 - the number of
+     *         plies until it is mated (negative), 0 for a draw, or UNKNOWN if there are too many
+     *         pieces, a pawn stands on the last row, or there is no table
+     */
+    public int probe(Board board, int sideToMove)
+    {
+        long all = board.getOccupancy(Board.WHITE) | board.getOccupancy(Board.BLACK);
+        if (Long.bitCount(all) > MAX_PIECES)
+            return UNKNOWN;
+        long lastRows = 0xff000000000000ffL;
+        if (((board.getPieces(Board.WHITE, Piece.PAWN) | board.getPieces(Board.BLACK, Piece.PAWN))
+             & lastRows) != 0)
+            return UNKNOWN;
+        int[][] lists = pieceLists.get();
+        if (lists == null)
+        {
+            lists = new int[3][MAX_PIECES];
+            pieceLists.set(lists);
+        }
+        int n = 0;
+        while (all != 0)
+        {
+            int sq = Long.numberOfTrailingZeros(all);
+            all &= all - 1;
+            boolean white = (board.getOccupancy(Board.WHITE) & 1L << sq) != 0;
+            lists[0][n] = white ? Board.WHITE : Board.BLACK;
+            lists[1][n] = board.typeAt(sq);
+            lists[2][n] = sq;
+            n++;
+        }
+        return value(lists[0], lists[1], lists[2], n, sideToMove);
+    }
+}
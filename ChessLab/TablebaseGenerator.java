@@ -0,0 +1,488 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * TablebaseGenerator class builds the endgame tables read by Tablebase, by retrograde analysis.
+ * Every placement of the pieces is set up once for each side to move, and its legal moves are
+ * counted. Positions without legal moves are lost in 0 plies, stalemates included as everywhere
+ * else in this engine; captures and promotions lead into smaller tables, which are generated
+ * first. Then, one ply at a time, each position whose distance to mate is known is unmoved to
+ * its predecessors: the predecessor of a loss is a win one ply longer, and a predecessor all of
+ * whose moves lead to wins for the opponent is a loss one ply longer than its longest one.
+ * Positions left over are draws.
+ * Usage: java TablebaseGenerator directory signature...   such as KQK KRK KQKR, or all
+ * @author Harrison Chen
+ * @version 5/4/23
+ */
+public class TablebaseGenerator
+{
+    //the tables already written, which this one's captures and promotions lead into
+    private Tablebase tablebase;
+
+    //the material: the side and type code of each piece, in table order
+    private String signature;
+    private int n;
+    private int[] sides;
+    private int[] types;
+
+    //the number of placements, 64 to the number of pieces
+    private int size;
+
+    //by side to move and placement: the distance to mate (see Tablebase.value), the number of
+    //moves not yet known to lose (-1 for illegal placements), and the longest of those losses
+    private byte[][] values;
+    private byte[][] counts;
+    private byte[][] longest;
+
+    //the longest distance to mate assigned so far
+    private int maxPly;
+
+    //for each captured piece and promoted pawn (index + 1, 0 for none): the smaller table the
+    //move leads into (null for bare kings), whether it is flipped, and each piece's index shift
+    private String[][] children;
+    private boolean[][] flipped;
+    private int[][][] shifts;
+
+    /**
+     * Constructs a generator of one table
+     * @param tb the tablebase holding the smaller tables
+     * @param sig the material signature, with the stronger side first
+     * @throws IllegalArgumentException if the signature is malformed or not in its usual form
+     */
+    public TablebaseGenerator(Tablebase tb, String sig)
+    {
+        tablebase = tb;
+        signature = sig;
+        int second = sig.indexOf('K', 1);
+        if (!sig.startsWith("K") || second < 0 || sig.length() > Tablebase.MAX_PIECES
+                || sig.length() < 3)
+            throw new IllegalArgumentException("Bad signature " + sig);
+        int[] white = types(sig.substring(1, second));
+        int[] black = types(sig.substring(second + 1));
+        if (!Tablebase.signature(white, black).equals(sig))
+            throw new IllegalArgumentException(sig + " should be written "
+                                               + Tablebase.signature(white, black));
+        n = sig.length();
+        sides = new int[n];
+        types = new int[n];
+        sides[1] = Board.BLACK;
+        types[0] = Piece.KING;
+        types[1] = Piece.KING;
+        for (int i = 0; i < white.length; i++)
+            types[2 + i] = white[i];
+        for (int i = 0; i < black.length; i++)
+        {
+            sides[2 + white.length + i] = Board.BLACK;
+            types[2 + white.length + i] = black[i];
+        }
+        size = 1 << (6 * n);
+        findChildren();
+    }
+
+    //returns the type codes of piece letters, in the same order
+    private static int[] types(String letters)
+    {
+        int[] t = new int[letters.length()];
+        for (int i = 0; i < t.length; i++)
+        {
+            t[i] = Tablebase.LETTERS.indexOf(letters.charAt(i));
+            if (t[i] < 0 || t[i] == Piece.KING)
+                throw new IllegalArgumentException("Bad piece " + letters.charAt(i));
+        }
+        return t;
+    }
+
+    /**
+     * Works out, for each capture and promotion, which smaller table it leads into and how the
+     * remaining pieces are indexed there
+     */
+    private void findChildren()
+    {
+        children = new String[n + 1][n + 1];
+        flipped = new boolean[n + 1][n + 1];
+        shifts = new int[n + 1][n + 1][n];
+        for (int captured = -1; captured < n; captured++)
+            for (int promoted = -1; promoted < n; promoted++)
+            {
+                if ((captured < 0 && promoted < 0)
+                        || (captured >= 0 && types[captured] == Piece.KING)
+                        || (promoted >= 0 && (types[promoted] != Piece.PAWN || promoted == captured)))
+                    continue;
+                int[] t = types.clone();
+                if (promoted >= 0)
+                    t[promoted] = Piece.QUEEN;
+                int[] count = new int[2];
+                int[][] pieces = new int[2][n];
+                for (int i = 2; i < n; i++)
+                    if (i != captured)
+                        pieces[sides[i]][count[sides[i]]++] = t[i];
+                if (count[0] + count[1] == 0)
+                    continue;
+                int[] white = Arrays.copyOf(pieces[Board.WHITE], count[Board.WHITE]);
+                int[] black = Arrays.copyOf(pieces[Board.BLACK], count[Board.BLACK]);
+                String child = Tablebase.signature(white, black);
+                boolean flip = !child.equals("K" + Tablebase.letters(white) + "K"
+                                             + Tablebase.letters(black));
+                children[captured + 1][promoted + 1] = child;
+                flipped[captured + 1][promoted + 1] = flip;
+
+                //the same order as Tablebase.value: kings, then the first side's pieces and the
+                //other side's, most valuable first
+                int[] s = shifts[captured + 1][promoted + 1];
+                int first = flip ? Board.BLACK : Board.WHITE;
+                s[0] = first == Board.WHITE ? 0 : 6;
+                s[1] = first == Board.WHITE ? 6 : 0;
+                int shift = 12;
+                for (int side = first, k = 0; k < 2; k++, side = 1 - side)
+                    for (int type = Piece.QUEEN; type >= Piece.PAWN; type--)
+                        for (int i = 2; i < n; i++)
+                            if (i != captured && sides[i] == side && t[i] == type)
+                            {
+                                s[i] = shift;
+                                shift += 6;
+                            }
+            }
+    }
+
+    /**
+     * Returns the signatures of the smaller tables this table's captures and promotions lead
+     * into, not counting bare kings
+     * @return the signatures
+     */
+    public Set<String> dependencies()
+    {
+        Set<String> d = new TreeSet<String>();
+        for (String[] row : children)
+            for (String child : row)
+                if (child != null)
+                    d.add(child);
+        return d;
+    }
+
+    /**
+     * Returns the value of the position a capture or promotion leads into
+     * @param sq the squares of the pieces after the move
+     * @param captured the index of the captured piece, or -1
+     * @param promoted the index of the promoted pawn, or -1
+     * @param stm the side to move after the move
+     * @return the value in the smaller table, from stm's perspective
+     */
+    private int childValue(int[] sq, int captured, int promoted, int stm)
+    {
+        String child = children[captured + 1][promoted + 1];
+        if (child == null)
+            return 0;
+        boolean flip = flipped[captured + 1][promoted + 1];
+        int[] s = shifts[captured + 1][promoted + 1];
+        int index = 0;
+        for (int i = 0; i < n; i++)
+            if (i != captured)
+                index |= (flip ? sq[i] ^ 56 : sq[i]) << s[i];
+        int v = tablebase.entry(child, flip ? 1 - stm : stm, index);
+        if (v == Tablebase.UNKNOWN)
+            throw new IllegalStateException("Missing table " + child);
+        return v;
+    }
+
+    //sets the squares of the pieces of a placement
+    private void decode(int index, int[] sq)
+    {
+        for (int i = 0; i < n; i++)
+            sq[i] = index >>> (6 * i) & 63;
+    }
+
+    //returns true if a square is attacked by a side, ignoring one captured piece
+    private boolean attacked(int target, int by, long occupied, int[] sq, int captured)
+    {
+        for (int i = 0; i < n; i++)
+            if (i != captured && sides[i] == by
+                    && (Board.attacks(by, types[i], sq[i], occupied) & 1L << target) != 0)
+                return true;
+        return false;
+    }
+
+    /**
+     * Sets up one placement: marks it illegal, or counts its moves, scoring the positions
+     * without legal moves and the moves that leave this table
+     * @param stm the side to move
+     * @param index the placement
+     * @param sq scratch space for the squares
+     */
+    private void setUp(int stm, int index, int[] sq)
+    {
+        decode(index, sq);
+        long occupied = 0;
+        long[] own = new long[2];
+        for (int i = 0; i < n; i++)
+        {
+            long b = 1L << sq[i];
+            boolean lastRow = sq[i] < 8 || sq[i] >= 56;
+            if ((occupied & b) != 0 || (types[i] == Piece.PAWN && lastRow))
+            {
+                counts[stm][index] = -1;
+                return;
+            }
+            occupied |= b;
+            own[sides[i]] |= b;
+        }
+        if (attacked(sq[1 - stm], stm, occupied, sq, -1))
+        {
+            counts[stm][index] = -1;
+            return;
+        }
+
+        int count = 0;
+        int legal = 0;
+        int win = 0;
+        int worst = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (sides[i] != stm)
+                continue;
+            int from = sq[i];
+            long targets;
+            if (types[i] == Piece.PAWN)
+            {
+                int dir = stm == Board.WHITE ? -8 : 8;
+                targets = Board.attacks(stm, Piece.PAWN, from, occupied) & own[1 - stm];
+                if ((occupied & 1L << (from + dir)) == 0)
+                {
+                    targets |= 1L << (from + dir);
+                    int startRow = stm == Board.WHITE ? 6 : 1;
+                    if (from / 8 == startRow && (occupied & 1L << (from + 2 * dir)) == 0)
+                        targets |= 1L << (from + 2 * dir);
+                }
+            }
+            else
+                targets = Board.attacks(stm, types[i], from, occupied) & ~own[stm];
+            while (targets != 0)
+            {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                int captured = -1;
+                for (int j = 0; j < n; j++)
+                    if (j != i && sq[j] == to)
+                        captured = j;
+                if (captured >= 0 && types[captured] == Piece.KING)
+                    continue;
+                sq[i] = to;
+                long after = occupied & ~(1L << from) | 1L << to;
+                boolean ok = !attacked(sq[stm], 1 - stm, after, sq, captured);
+                boolean promotes = types[i] == Piece.PAWN && (to < 8 || to >= 56);
+                int v = 0;
+                if (ok && (captured >= 0 || promotes))
+                    v = childValue(sq, captured, promotes ? i : -1, 1 - stm);
+                sq[i] = from;
+                if (!ok)
+                    continue;
+                legal++;
+                if (captured < 0 && !promotes)
+                    count++;
+                else if (v < 0 && (win == 0 || -v < win))
+                    win = -v;
+                else if (v > 0)
+                    worst = Math.max(worst, v);
+                else if (v == 0)
+                    count++;
+            }
+        }
+
+        counts[stm][index] = (byte) count;
+        longest[stm][index] = (byte) worst;
+        if (win > 0)
+            assign(stm, index, win);
+        else if (legal == 0)
+            assign(stm, index, -1);
+        else if (legal > 0 && count == 0)
+            assign(stm, index, -(worst + 2));
+    }
+
+    //sets the value of a placement and keeps track of the longest distance
+    private void assign(int stm, int index, int value)
+    {
+        int ply = value > 0 ? value : -value - 1;
+        if (ply > 126)
+            throw new IllegalStateException(signature + " has a mate longer than 126 plies");
+        values[stm][index] = (byte) value;
+        maxPly = Math.max(maxPly, ply);
+    }
+
+    /**
+     * Passes a position's value on to each position one move before it
+     * @param stm the side to move in the position
+     * @param index the placement
+     * @param ply the distance to mate of the position
+     * @param sq scratch space for the squares
+     */
+    private void unmove(int stm, int index, int ply, int[] sq)
+    {
+        boolean lost = values[stm][index] < 0;
+        decode(index, sq);
+        long occupied = 0;
+        for (int i = 0; i < n; i++)
+            occupied |= 1L << sq[i];
+        int mover = 1 - stm;
+        for (int i = 0; i < n; i++)
+        {
+            if (sides[i] != mover)
+                continue;
+            int to = sq[i];
+            long froms;
+            if (types[i] == Piece.PAWN)
+            {
+                int back = mover == Board.WHITE ? 8 : -8;
+                int from = to + back;
+                froms = 0;
+                if (from >= 8 && from < 56 && (occupied & 1L << from) == 0)
+                {
+                    froms = 1L << from;
+                    int doubleRow = mover == Board.WHITE ? 4 : 3;
+                    if (to / 8 == doubleRow && (occupied & 1L << (from + back)) == 0)
+                        froms |= 1L << (from + back);
+                }
+            }
+            else
+                froms = Board.attacks(mover, types[i], to, occupied) & ~occupied;
+            while (froms != 0)
+            {
+                int from = Long.numberOfTrailingZeros(froms);
+                froms &= froms - 1;
+                int pred = index & ~(63 << (6 * i)) | from << (6 * i);
+                if (counts[mover][pred] < 0)
+                    continue;
+                int v = values[mover][pred];
+                if (lost)
+                {
+                    if (v == 0 || v > ply + 1)
+                        assign(mover, pred, ply + 1);
+                }
+                else if (v == 0)
+                {
+                    counts[mover][pred]--;
+                    if (ply > longest[mover][pred])
+                        longest[mover][pred] = (byte) ply;
+                    if (counts[mover][pred] == 0)
+                        assign(mover, pred, -(longest[mover][pred] + 2));
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the table
+     * @return the distance to mate of each placement, white to move first
+     */
+    public byte[][] generate()
+    {
+        values = new byte[2][size];
+        counts = new byte[2][size];
+        longest = new byte[2][size];
+        maxPly = 0;
+        int[] sq = new int[n];
+        for (int stm = Board.WHITE; stm <= Board.BLACK; stm++)
+            for (int index = 0; index < size; index++)
+                setUp(stm, index, sq);
+
+        //wins have an odd number of plies and losses an even number, -1 - plies
+        for (int ply = 0; ply <= maxPly; ply++)
+        {
+            int target = ply % 2 == 1 ? ply : -ply - 1;
+            for (int stm = Board.WHITE; stm <= Board.BLACK; stm++)
+                for (int index = 0; index < size; index++)
+                    if (values[stm][index] == target && counts[stm][index] >= 0)
+                        unmove(stm, index, ply, sq);
+        }
+        byte[][] result = values;
+        values = null;
+        counts = null;
+        longest = null;
+        return result;
+    }
+
+    /**
+     * Writes a table to its file
+     * @param table the values returned by generate
+     * @throws IOException if the file cannot be written
+     */
+    public void write(byte[][] table) throws IOException
+    {
+        File f = tablebase.file(signature);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(f))))
+        {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(n);
+            out.write(table[Board.WHITE]);
+            out.write(table[Board.BLACK]);
+        }
+        tablebase.forget(signature);
+    }
+
+    /**
+     * Generates a table and writes it, after the smaller tables it needs (unless they exist)
+     * @param tb the tablebase to write into
+     * @param sig the material signature
+     * @param log where progress is printed
+     * @throws IOException if a file cannot be written
+     */
+    public static void generate(Tablebase tb, String sig, PrintStream log) throws IOException
+    {
+        TablebaseGenerator g = new TablebaseGenerator(tb, sig);
+        for (String child : g.dependencies())
+            if (!tb.has(child))
+                generate(tb, child, log);
+        long start = System.nanoTime();
+        byte[][] table = g.generate();
+        g.write(table);
+        int wins = 0;
+        int losses = 0;
+        for (byte[] side : table)
+            for (byte v : side)
+                if (v > 0)
+                    wins++;
+                else if (v < 0)
+                    losses++;
+        log.println(sig + ": " + wins + " wins, " + losses + " losses, longest mate "
+                    + g.maxPly + " plies, " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * Returns the signatures of every table of 3 and 4 pieces
+     * @return the signatures, smallest first
+     */
+    public static List<String> all()
+    {
+        List<String> all = new ArrayList<String>();
+        String pieces = "QRBNP";
+        for (int a = 0; a < 5; a++)
+            all.add("K" + pieces.charAt(a) + "K");
+        for (int a = 0; a < 5; a++)
+            for (int b = a; b < 5; b++)
+            {
+                all.add("K" + pieces.charAt(a) + pieces.charAt(b) + "K");
+                all.add("K" + pieces.charAt(a) + "K" + pieces.charAt(b));
+            }
+        return all;
+    }
+
+    /**
+     * Generates tables
+     * @param args the directory to write into, then the signatures (or all)
+     * @throws IOException if a file cannot be written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.out.println("usage: java TablebaseGenerator directory signature...|all");
+            return;
+        }
+        new File(args[0]).mkdirs();
+        Tablebase tb = new Tablebase(args[0]);
+        List<String> signatures = args[1].equals("all") ? all()
+                                  : Arrays.asList(args).subList(1, args.length);
+        for (String sig : signatures)
+            if (!tb.has(sig))
+                generate(tb, sig, System.out);
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.Arrays;
+
+/**
+ * TranspositionTable class remembers the results of searched positions, keyed by their zobrist key,
+ * so a position reached again through a different move order does not have to be searched again.
+ * It has a fixed number of entries; a position maps to one slot, which is taken over by a new
+ * result if it was searched at least as deep, or if the slot was filled by an earlier search.
+ * Scores are stored from the perspective of the player that owns the table.
+ * Each entry is packed into one long, stored next to its key XORed with the entry, so threads
+ * can share a table without locking: an entry torn by two threads writing the slot at once no
+ * longer XORs back to its key, and is treated as missing. The statistics are not synchronized,
+ * so they are approximate when the table is shared.
+ * @author Harrison Chen
+ * @version 4/26/23
+ */
+public class TranspositionTable
+{
+    //bound types: the stored score is exact, a lower bound, or an upper bound of the true score
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    //layout of a packed entry: the move in bits 0-18, the bound in bits 19-20, the depth + 1 in
+    //bits 21-27 (so a stored entry is never 0), the generation in bits 28-31, the score above
+    private static final int BOUND_SHIFT = 19;
+    private static final int DEPTH_SHIFT = 21;
+    private static final int GENERATION_SHIFT = 28;
+    private static final int SCORE_SHIFT = 32;
+
+    //the deepest result that fits in an entry
+    public static final int MAX_DEPTH = 126;
+
+    //each key XORed with its entry, and the entries
+    private long[] keys;
+    private long[] entries;
+    private int mask;
+
+    //the current search, entries from earlier searches can always be replaced
+    private volatile int generation;
+
+    //statistics for sizing the table
+    private long probes;
+    private long hits;
+    private long collisions;
+    private long stores;
+    private int filled;
+
+    /**
+     * Constructs a new table
+     * @param entries the number of entries, rounded down to a power of two
+     */
+    public TranspositionTable(int entries)
+    {
+        if (entries < 1)
+            throw new IllegalArgumentException("entries < 1");
+        int size = Integer.highestOneBit(entries);
+        keys = new long[size];
+        this.entries = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Looks up a position
+     * @param key the zobrist key of the position, including the side to move
+     * @return the packed entry of the position, or 0 if it is not stored
+     */
+    public long probe(long key)
+    {
+        probes++;
+        int slot = (int) key & mask;
+        long entry = entries[slot];
+        if (entry == 0)
+            return 0;
+        if ((keys[slot] ^ entry) != key)
+        {
+            collisions++;
+            return 0;
+        }
+        hits++;
+        return entry;
+    }
+
+    /**
+     * Returns the score of an entry
+     * @param entry an entry returned by probe
+     * @return the score
+     */
+    public static int getScore(long entry)
+    {
+        return (int) (entry >> SCORE_SHIFT);
+    }
+
+    /**
+     * Returns the depth the position of an entry was searched to
+     * @param entry an entry returned by probe
+     * @return the number of plies searched below the position
+     */
+    public static int getDepth(long entry)
+    {
+        return (int) (entry >>> DEPTH_SHIFT & 127) - 1;
+    }
+
+    /**
+     * Returns whether the score of an entry is EXACT, a LOWER bound, or an UPPER bound
+     * @param entry an entry returned by probe
+     * @return the bound type
+     */
+    public static int getBound(long entry)
+    {
+        return (int) (entry >>> BOUND_SHIFT & 3);
+    }
+
+    /**
+     * Returns the best move found for the position of an entry
+     * @param entry an entry returned by probe
+     * @return the packed best move, or Move.NONE if none was stored
+     */
+    public static int getMove(long entry)
+    {
+        return (int) (entry & ((1 << BOUND_SHIFT) - 1));
+    }
+
+    //returns the generation an entry was stored in
+    private static int generation(long entry)
+    {
+        return (int) (entry >>> GENERATION_SHIFT & 15);
+    }
+
+    /**
+     * Stores the result of searching a position, unless its slot holds a deeper result from
+     * the current search
+     * @param key the zobrist key of the position, including the side to move
+     * @param depth the number of plies searched below the position, at most MAX_DEPTH
+     * @param score the score found
+     * @param bound whether the score is EXACT, a LOWER bound, or an UPPER bound
+     * @param move the packed best move found, or Move.NONE
+     */
+    public void store(long key, int depth, int score, int bound, int move)
+    {
+        int slot = (int) key & mask;
+        long old = entries[slot];
+        int gen = generation;
+        if (old == 0)
+            filled++;
+        else if ((keys[slot] ^ old) != key && generation(old) == gen && getDepth(old) > depth)
+            return;
+        long entry = (long) score << SCORE_SHIFT
+                     | (long) gen << GENERATION_SHIFT
+                     | (long) (depth + 1) << DEPTH_SHIFT
+                     | (long) bound << BOUND_SHIFT
+                     | move;
+        stores++;
+        keys[slot] = key ^ entry;
+        entries[slot] = entry;
+    }
+
+    /**
+     * Marks the start of a new search, so entries of earlier searches may be replaced
+     */
+    public void newSearch()
+    {
+        generation = (generation + 1) & 15;
+    }
+
+    /**
+     * Empties the table and resets its statistics
+     */
+    public void clear()
+    {
+        Arrays.fill(entries, 0);
+        filled = 0;
+        resetStatistics();
+    }
+
+    /**
+     * Resets the probe, hit, collision, and store counters
+     */
+    public void resetStatistics()
+    {
+        probes = 0;
+        hits = 0;
+        collisions = 0;
+        stores = 0;
+    }
+
+    /**
+     * Returns the number of entries in this table
+     * @return the capacity
+     */
+    public int getCapacity()
+    {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the number of entries that hold a position
+     * @return the number of filled entries
+     */
+    public int getFilled()
+    {
+        return filled;
+    }
+
+    /**
+     * Returns the number of lookups
+     * @return the probe count
+     */
+    public long getProbes()
+    {
+        return probes;
+    }
+
+    /**
+     * Returns the number of lookups that found their position
+     * @return the hit count
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups whose slot held a different position
+     * @return the collision count
+     */
+    public long getCollisions()
+    {
+        return collisions;
+    }
+
+    /**
+     * Returns the number of results written to the table
+     * @return the store count
+     */
+    public long getStores()
+    {
+        return stores;
+    }
+
+    /**
+     * Returns the fraction of lookups that found their position
+     * @return hits / probes, or 0 if there were no probes
+     */
+    public double getHitRate()
+    {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+}
@@ -0,0 +1,458 @@
+import java.awt.Color;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Uci class lets chess programs play against a SmartPlayer by sending it Universal Chess Interface
+ * commands on standard input and reading its answers on standard output. It understands uci,
+ * isready, ucinewgame, setoption (Hash, Threads, and TablebasePath), position (startpos or fen, then moves), go
+ * (depth, movetime, wtime, btime, winc, binc, movestogo, infinite), stop, and quit. The search
+ * runs on its own thread so stop and isready are answered while it thinks, and an info line is
+ * printed for each completed depth. Pawns reaching the last row become queens unless the move
+ * names another piece. Castling and en passant are not supported, as elsewhere in this engine:
+ * a move list holding one is rejected as illegal, and go answers bestmove 0000 until a position
+ * is set up successfully. Malformed commands are answered with an info string.
+ * Usage: java Uci
+ * @author Harrison Chen
+ * @version 4/30/23
+ */
+public class Uci
+{
+    //the name the engine gives itself
+    public static final String NAME = "ChessLab";
+
+    //bytes per transposition table entry, for converting the Hash option
+    private static final int ENTRY_BYTES = 16;
+
+    //the total size of the transposition tables in megabytes, and the number of search threads
+    private int hash = 16;
+    private int threads = 1;
+
+    //the endgame tables, or null if no TablebasePath has been set
+    private Tablebase tablebase;
+
+    //the position to search
+    private Board board;
+    private int sideToMove;
+
+    //false after a position command failed, leaving the board only partly set up
+    private boolean positionValid = true;
+
+    //one table per side, since scores are stored from the searching player's perspective
+    private TranspositionTable[] tables = new TranspositionTable[2];
+
+    //the player searching and the thread it runs on, null when idle
+    private volatile SmartPlayer searching;
+    private Thread searchThread;
+
+    //where answers are written
+    private PrintStream out;
+
+    /**
+     * Constructs a new front end, set up at the start position
+     * @param output where answers are written
+     */
+    public Uci(PrintStream output)
+    {
+        out = output;
+        board = new Board();
+        Game.setUp(board);
+        sideToMove = Board.WHITE;
+        newTables();
+    }
+
+    //replaces the transposition tables with empty ones, each half of the Hash size so that
+    //the two together use the memory the option asks for
+    private void newTables()
+    {
+        long bytes = (long) hash * (1 << 20) / 2;
+        int entries = (int) Math.min(Integer.MAX_VALUE, bytes / ENTRY_BYTES);
+        tables[Board.WHITE] = new TranspositionTable(entries);
+        tables[Board.BLACK] = new TranspositionTable(entries);
+    }
+
+    //writes one line of output
+    private void send(String line)
+    {
+        synchronized (out)
+        {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads and carries out commands until quit or the end of the input
+     * @param in the commands
+     * @throws IOException if the commands cannot be read
+     */
+    public void run(BufferedReader in) throws IOException
+    {
+        String line;
+        while ((line = in.readLine()) != null)
+            if (!command(line.trim()))
+                break;
+        stopSearch();
+    }
+
+    /**
+     * Carries out one command; unknown commands are ignored
+     * @param line the command and its arguments
+     * @return false if the command was quit
+     */
+    public boolean command(String line)
+    {
+        String[] words = line.split("\\s+");
+        try
+        {
+            return command(words);
+        }
+        catch (IllegalArgumentException e)
+        {
+            send("info string " + line + ": " + e.getMessage());
+            return true;
+        }
+    }
+
+    //carries out the command split into words
+    private boolean command(String[] words)
+    {
+        switch (words[0])
+        {
+            case "uci":
+                send("id name " + NAME);
+                send("id author Harrison Chen");
+                send("option name Hash type spin default 16 min 1 max 4096");
+                send("option name Threads type spin default 1 min 1 max 256");
+                send("option name TablebasePath type string default <empty>");
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "ucinewgame":
+                waitForSearch();
+                newTables();
+                break;
+            case "setoption":
+                waitForSearch();
+                setOption(words);
+                break;
+            case "position":
+                waitForSearch();
+                position(words);
+                break;
+            case "go":
+                waitForSearch();
+                go(words);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                return false;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Sets an option: setoption name Hash|Threads value n, or setoption name TablebasePath value
+     * dir (<empty> for none)
+     * @param words the words of the command
+     */
+    private void setOption(String[] words)
+    {
+        if (words.length < 5 || !words[1].equals("name") || !words[3].equals("value"))
+            return;
+        if (words[2].equalsIgnoreCase("TablebasePath"))
+        {
+            String dir = line(words, 4);
+            tablebase = dir.isEmpty() || dir.equals("<empty>") ? null : new Tablebase(dir);
+            return;
+        }
+        try
+        {
+            int value = Integer.parseInt(words[4]);
+            if (words[2].equalsIgnoreCase("Hash") && value >= 1)
+            {
+                hash = value;
+                newTables();
+            }
+            else if (words[2].equalsIgnoreCase("Threads") && value >= 1)
+                threads = value;
+        }
+        catch (NumberFormatException e)
+        {
+            send("info string bad value " + words[4]);
+        }
+    }
+
+    //joins the words of a command from an index on, for values that may hold spaces
+    private static String line(String[] words, int from)
+    {
+        StringBuilder s = new StringBuilder();
+        for (int i = from; i < words.length; i++)
+            s.append(i > from ? " " : "").append(words[i]);
+        return s.toString();
+    }
+
+    /**
+     * Sets up a position: position startpos|fen fields... [moves m1 m2 ...]
+     * @param words the words of the command
+     */
+    private void position(String[] words)
+    {
+        positionValid = false;
+        int i = 1;
+        if (words.length > 1 && words[1].equals("fen"))
+        {
+            StringBuilder fen = new StringBuilder();
+            for (i = 2; i < words.length && !words[i].equals("moves"); i++)
+                fen.append(words[i]).append(' ');
+            board = new Board();
+            sideToMove = board.setFen(fen.toString());
+        }
+        else
+        {
+            board = new Board();
+            Game.setUp(board);
+            sideToMove = Board.WHITE;
+            i = 2;
+        }
+        if (i < words.length && words[i].equals("moves"))
+            for (i++; i < words.length; i++)
+                if (!play(words[i]))
+                {
+                    send("info string illegal move " + words[i]);
+                    return;
+                }
+        positionValid = true;
+    }
+
+    /**
+     * Plays a move in coordinate notation, such as e2e4 or e7e8n
+     * @param name the move
+     * @return false if the move is not legal
+     */
+    private boolean play(String name)
+    {
+        if (name.length() < 4)
+            return false;
+        int from = square(name.substring(0, 2));
+        int to = square(name.substring(2, 4));
+        int[] moves = new int[256];
+        int count = board.generateMoves(sideToMove, moves, 0);
+        for (int i = 0; i < count; i++)
+            if (Move.from(moves[i]) == from && Move.to(moves[i]) == to)
+            {
+                Move move = board.toMove(moves[i]);
+                Game.executeMove(board, move);
+                int type = name.length() > 4 ? "pnbrq".indexOf(name.charAt(4)) : -1;
+                if (type > Piece.PAWN && type < Piece.QUEEN && move.getPiece() instanceof Pawn)
+                {
+                    Color color = move.getPiece().getColor();
+                    String colorStr = color == Color.WHITE ? "white" : "black";
+                    String[] names = {"pawn", "knight", "bishop", "rook"};
+                    Piece.create(type, color, colorStr + "_" + names[type] + ".gif")
+                         .putSelfInGrid(board, move.getDestination());
+                }
+                sideToMove = 1 - sideToMove;
+                return true;
+            }
+        return false;
+    }
+
+    //returns the number of a square named like e4, or -1 if the name is not a square
+    private static int square(String name)
+    {
+        int col = name.charAt(0) - 'a';
+        int row = '8' - name.charAt(1);
+        if (col < 0 || col > 7 || row < 0 || row > 7)
+            return -1;
+        return row * 8 + col;
+    }
+
+    /**
+     * Starts searching the position: go [depth n] [movetime ms] [wtime ms] [btime ms] [winc ms]
+     * [binc ms] [movestogo n] [infinite]. Without a limit the search runs until stop.
+     * @param words the words of the command
+     */
+    private void go(String[] words)
+    {
+        if (!positionValid)
+        {
+            send("info string no position to search");
+            send("bestmove 0000");
+            return;
+        }
+        int depth = 0;
+        long moveTime = 0;
+        long[] time = {-1, -1};
+        long[] inc = {0, 0};
+        int movesToGo = 30;
+        for (int i = 1; i < words.length - 1; i++)
+        {
+            String arg = words[i + 1];
+            switch (words[i])
+            {
+                case "depth":
+                    depth = Integer.parseInt(arg);
+                    break;
+                case "movetime":
+                    moveTime = Long.parseLong(arg);
+                    break;
+                case "wtime":
+                    time[Board.WHITE] = Long.parseLong(arg);
+                    break;
+                case "btime":
+                    time[Board.BLACK] = Long.parseLong(arg);
+                    break;
+                case "winc":
+                    inc[Board.WHITE] = Long.parseLong(arg);
+                    break;
+                case "binc":
+                    inc[Board.BLACK] = Long.parseLong(arg);
+                    break;
+                case "movestogo":
+                    movesToGo = Math.max(1, Integer.parseInt(arg));
+                    break;
+                default:
+                    continue;
+            }
+            i++;
+        }
+
+        Color color = sideToMove == Board.WHITE ? Color.WHITE : Color.BLACK;
+        SmartPlayer player = new SmartPlayer(board, color, NAME);
+        player.setTranspositionTable(tables[sideToMove]);
+        player.setTablebase(tablebase);
+        if (threads > 1)
+        {
+            player.setThreads(threads);
+            player.setLazySmp(true);
+        }
+        long left = time[sideToMove];
+        if (moveTime > 0)
+            player.setTimeBudget(moveTime);
+        else if (left >= 0)
+        {
+            //an even share of the time left, plus most of the increment, keeping a reserve
+            long budget = left / movesToGo + inc[sideToMove] * 3 / 4;
+            player.setTimeBudget(Math.max(1, Math.min(budget, left / 2)));
+        }
+        else if (depth > 0)
+            player.setDepth(Math.min(depth, Searcher.MAX_DEPTH));
+        else
+            player.setTimeBudget(24L * 60 * 60 * 1000);
+        player.setSearchListener(new SearchListener()
+        {
+            public void depthCompleted(int d, int score, long nodes, long nanos, int[] pv)
+            {
+                info(d, score, nodes, nanos, pv);
+            }
+        });
+
+        searching = player;
+        searchThread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                Move best = player.nextMove();
+                searching = null;
+                send("bestmove " + (best == null ? "0000" : name(best)));
+            }
+        });
+        searchThread.start();
+    }
+
+    /**
+     * Prints the info line of a completed depth
+     * @param depth the depth
+     * @param score the score from the side to move's perspective
+     * @param nodes the nodes visited
+     * @param nanos the time taken in nanoseconds
+     * @param pv the expected line
+     */
+    private void info(int depth, int score, long nodes, long nanos, int[] pv)
+    {
+        StringBuilder line = new StringBuilder("info depth " + depth + " score ");
+        //mate scores count the plies from the root, which UCI gives in moves
+        if (score > Searcher.MATE_BOUND)
+            line.append("mate ").append((Searcher.MATE - score + 1) / 2);
+        else if (score < -Searcher.MATE_BOUND)
+            line.append("mate -").append((Searcher.MATE + score) / 2);
+        else
+            line.append("cp ").append(score);
+        line.append(" nodes ").append(nodes);
+        line.append(" nps ").append(nanos == 0 ? 0 : nodes * 1000000000L / nanos);
+        line.append(" time ").append(nanos / 1000000);
+        line.append(" pv");
+        for (int m : pv)
+            line.append(' ').append(Move.name(m));
+        send(line.toString());
+    }
+
+    /**
+     * Returns a move in coordinate notation, adding q when a pawn reaches the last row
+     * @param move the move
+     * @return the move name, such as e2e4 or e7e8q
+     */
+    private static String name(Move move)
+    {
+        String name = Move.name(Board.pack(move));
+        int row = move.getPiece().getColor() == Color.WHITE ? 0 : 7;
+        if (move.getPiece() instanceof Pawn && move.getDestination().getRow() == row)
+            name += "q";
+        return name;
+    }
+
+    //stops the search, if one is running, and waits for its best move to be printed
+    private void stopSearch()
+    {
+        SmartPlayer player = searching;
+        Thread thread = searchThread;
+        try
+        {
+            //stop is ignored until the player has begun its search, so repeat it until the
+            //search thread ends
+            while (player != null && thread != null && thread.isAlive())
+            {
+                player.stop();
+                thread.join(10);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        waitForSearch();
+    }
+
+    //waits for the search, if one is running, to finish
+    private void waitForSearch()
+    {
+        if (searchThread == null)
+            return;
+        try
+        {
+            searchThread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+    }
+
+    /**
+     * Runs the engine on standard input and output
+     * @param args not used
+     * @throws IOException if standard input cannot be read
+     */
+    public static void main(String[] args) throws IOException
+    {
+        new Uci(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+}